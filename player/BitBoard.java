@@ -0,0 +1,238 @@
+/* BitBoard.java */
+
+package player;
+
+/**
+ *  Static masks and helpers for the 64-bit board representation used by Board.
+ *
+ *  A square (x, y) is mapped to bit number x * GAMESIZE + y, so each column of
+ *  the board occupies one byte of a long.  Moving one row south is a shift by 1
+ *  and moving one column east is a shift by GAMESIZE.
+ */
+public final class BitBoard {
+
+    protected static final long CORNERS = bit(0, 0) | bit(0, 7) | bit(7, 0) | bit(7, 7);
+
+    // Goal areas (corners excluded).  BLACK owns the top and bottom rows,
+    // WHITE owns the left and right columns.
+    protected static final long TOP_GOAL    = row(0) & ~CORNERS;
+    protected static final long BOTTOM_GOAL = row(7) & ~CORNERS;
+    protected static final long LEFT_GOAL   = column(0) & ~CORNERS;
+    protected static final long RIGHT_GOAL  = column(7) & ~CORNERS;
+
+    protected static final long ALL_GOALS = TOP_GOAL | BOTTOM_GOAL | LEFT_GOAL | RIGHT_GOAL;
+
+    // squares a chip of each color may never occupy: the corners and the opponent's goal areas
+    protected static final long[] BANNED = {
+        CORNERS | LEFT_GOAL | RIGHT_GOAL,  // BLACK
+        CORNERS | TOP_GOAL | BOTTOM_GOAL   // WHITE
+    };
+
+    // the eight surrounding squares of every square
+    protected static final long[] NEIGHBORS = new long[64];
+
+    // the eight directions, in the order Board.connectionFinder() checks them: S, N, E, W, NW, NE, SW, SE
+    protected static final int DIRECTIONS = 8;
+    protected static final int[] DX = {0, 0, 1, -1, -1, 1, -1, 1};
+    protected static final int[] DY = {1, -1, 0, 0, -1, -1, 1, 1};
+    // the reverse of each direction
+    protected static final int[] OPPOSITE = {1, 0, 3, 2, 7, 6, 5, 4};
+
+    // RAYS[d][sq] holds every square from sq to the edge of the board in direction d, sq excluded
+    protected static final long[][] RAYS = new long[DIRECTIONS][64];
+
+    static {
+        for (int x = 0; x < Board.GAMESIZE; x++) {
+            for (int y = 0; y < Board.GAMESIZE; y++) {
+                long n = 0;
+                for (int dx = -1; dx <= 1; dx++) {
+                    for (int dy = -1; dy <= 1; dy++) {
+                        if ((dx != 0 || dy != 0) && inBounds(x + dx, y + dy)) {
+                            n |= bit(x + dx, y + dy);
+                        }
+                    }
+                }
+                NEIGHBORS[square(x, y)] = n;
+                for (int d = 0; d < DIRECTIONS; d++) {
+                    long ray = 0;
+                    for (int nx = x + DX[d], ny = y + DY[d]; inBounds(nx, ny); nx += DX[d], ny += DY[d]) {
+                        ray |= bit(nx, ny);
+                    }
+                    RAYS[d][square(x, y)] = ray;
+                }
+            }
+        }
+    }
+
+    /**
+     * private BitBoard constructor; this class only holds static helpers
+     */
+    private BitBoard() {
+    }
+
+    /**
+     * @param x: column number
+     * @param y: row number
+     * @return true if (x, y) lies on the board
+     */
+    protected static boolean inBounds(int x, int y) {
+        return x >= 0 && x < Board.GAMESIZE && y >= 0 && y < Board.GAMESIZE;
+    }
+
+    /**
+     * @param x: column number
+     * @param y: row number
+     * @return the bit number of square (x, y)
+     */
+    protected static int square(int x, int y) {
+        return x * Board.GAMESIZE + y;
+    }
+
+    /**
+     * @param sq: a bit number
+     * @return the column number of the square
+     */
+    protected static int x(int sq) {
+        return sq >>> 3;
+    }
+
+    /**
+     * @param sq: a bit number
+     * @return the row number of the square
+     */
+    protected static int y(int sq) {
+        return sq & 7;
+    }
+
+    /**
+     * @param x: column number
+     * @param y: row number
+     * @return a mask with only square (x, y) set
+     */
+    protected static long bit(int x, int y) {
+        return 1L << square(x, y);
+    }
+
+    /**
+     * Finds the first blocking square seen from sq in direction d
+     *
+     * @param sq: a bit number
+     * @param d: a direction, an index into DX and DY
+     * @param blockers: the squares that block the line of sight
+     * @return the bit number of the nearest blocker in direction d, or -1 if there is none
+     */
+    protected static int firstBlocker(int sq, int d, long blockers) {
+        long b = RAYS[d][sq] & blockers;
+        if (b == 0) {
+            return -1;
+        }
+        //rays towards higher bit numbers meet their nearest square in the lowest bit
+        if (DX[d] * Board.GAMESIZE + DY[d] > 0) {
+            return Long.numberOfTrailingZeros(b);
+        }
+        return 63 - Long.numberOfLeadingZeros(b);
+    }
+
+    /**
+     * Finds the squares in sight of sq: in each direction, every square up to and
+     * including the first blocker
+     *
+     * @param sq: a bit number
+     * @param blockers: the squares that block the line of sight
+     * @return a mask of the squares seen from sq
+     */
+    protected static long visible(int sq, long blockers) {
+        long seen = 0;
+        for (int d = 0; d < DIRECTIONS; d++) {
+            long ray = RAYS[d][sq];
+            int b = firstBlocker(sq, d, blockers);
+            if (b >= 0) {
+                ray &= ~RAYS[d][b];
+            }
+            seen |= ray;
+        }
+        return seen;
+    }
+
+    /**
+     * @param a: a bit number
+     * @param b: another bit number
+     * @return the squares strictly between a and b if they lie on one line, otherwise 0
+     */
+    protected static long between(int a, int b) {
+        for (int d = 0; d < DIRECTIONS; d++) {
+            if ((RAYS[d][a] & (1L << b)) != 0) {
+                return RAYS[d][a] & RAYS[OPPOSITE[d]][b];
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Shifts a mask one square in every direction at once
+     *
+     * @param m: a mask
+     * @return the squares next to a square of m, squares of m included only if they are next to another one
+     */
+    protected static long dilate(long m) {
+        long southward = (m << 1) & ~row(0);
+        long northward = (m >>> 1) & ~row(Board.GAMESIZE - 1);
+        long vertical = m | southward | northward;
+        return southward | northward | (vertical << Board.GAMESIZE) | (vertical >>> Board.GAMESIZE);
+    }
+
+    /**
+     * Finds the squares where a chip would form a cluster with the chips in own:
+     * squares next to two or more chips, and squares next to a chip that already has a neighbor.
+     *
+     * @param own: the chips of one color
+     * @return the squares a chip of that color may not be put on because of the cluster rule
+     */
+    protected static long clusterMask(long own) {
+        long one = 0;
+        long two = 0;
+        for (int d = 0; d < DIRECTIONS; d++) {
+            long t = shift(own, d);
+            two |= one & t;
+            one |= t;
+        }
+        return two | dilate(own & one);
+    }
+
+    /**
+     * Moves every square of a mask one step in a direction; squares that leave the board are dropped
+     *
+     * @param m: a mask
+     * @param d: a direction, an index into DX and DY
+     * @return the shifted mask
+     */
+    protected static long shift(long m, int d) {
+        if (DY[d] > 0) {
+            m = (m << 1) & ~row(0);
+        } else if (DY[d] < 0) {
+            m = (m >>> 1) & ~row(Board.GAMESIZE - 1);
+        }
+        if (DX[d] > 0) {
+            m <<= Board.GAMESIZE;
+        } else if (DX[d] < 0) {
+            m >>>= Board.GAMESIZE;
+        }
+        return m;
+    }
+
+    /**
+     * @param y: row number
+     * @return a mask of every square in row y
+     */
+    protected static long row(int y) {
+        return 0x0101010101010101L << y;
+    }
+
+    /**
+     * @param x: column number
+     * @return a mask of every square in column x
+     */
+    protected static long column(int x) {
+        return 0xFFL << (x * Board.GAMESIZE);
+    }
+}
@@ -12,6 +12,9 @@ import list.*;
  *
  *  It contains 8 x 8 cells (grids, chip locations)
  *  The chip's color can be either BLACK(0) or WHITE(1)
+ *
+ *  The chips of each color are kept in one 64-bit mask (see BitBoard for the
+ *  square numbering); Cell objects are only created when a caller asks for one.
  */
 public class Board implements Cloneable{
     
@@ -22,13 +25,65 @@ public class Board implements Cloneable{
     protected static final int GAMESIZE = 8;
     protected static final int MAXSTEPS = 10;
     protected static final int OFFSET = 10;
+    protected static final int EMPTY = -1;
+    // most moves a color can have: 10 chips times 64 target squares
+    protected static final int MAXMOVES = MAXSTEPS * GAMESIZE * GAMESIZE;
     
     protected int mySteps;
     protected int oppSteps;
     protected int myColor;
     protected int oppColor;
     
-    protected Cell[][] board;
+    protected long blackChips;
+    protected long whiteChips;
+    protected long occupied;
+    
+    // color of the player to move next; WHITE has the first move
+    protected int toMove;
+    // Zobrist key of the position, updated with XOR on every change
+    protected long hashKey;
+    
+    // random keys for (color, square), for BLACK to move, and for each color being in the step phase
+    private static final long[][] CHIP_KEYS = new long[2][GAMESIZE * GAMESIZE];
+    private static final long BLACK_TO_MOVE_KEY;
+    private static final long[] STEP_PHASE_KEYS = new long[2];
+    
+    static {
+        //splitmix64 with a fixed seed, so keys are the same on every run
+        long seed = 0x9E3779B97F4A7C15L;
+        for (int c = 0; c < 2; c++) {
+            for (int sq = 0; sq < GAMESIZE * GAMESIZE; sq++) {
+                seed += 0x9E3779B97F4A7C15L;
+                CHIP_KEYS[c][sq] = mix(seed);
+            }
+        }
+        seed += 0x9E3779B97F4A7C15L;
+        BLACK_TO_MOVE_KEY = mix(seed);
+        for (int c = 0; c < 2; c++) {
+            seed += 0x9E3779B97F4A7C15L;
+            STEP_PHASE_KEYS[c] = mix(seed);
+        }
+    }
+    
+    // visibility graph: the chips of the same color that the chip on each square is connected to,
+    // kept up to date by place() and clear()
+    private long[] edges;
+    // the number of edges in the visibility graph of each color, i.e. its pairs of visible chips
+    private int[] pairs;
+    
+    // squares where each color may not add a chip because of the cluster rule, kept up to date by place() and clear()
+    private long[] forbidden;
+    
+    // network bookkeeping for NetworkDetector: one bit per color set when the last check found no
+    // network, and per color the chips that gained an edge since that check
+    private int noNetwork;
+    private long[] netDirty;
+    // the three values above as they were before each move in history, so unmakeMove() can restore them
+    private long[] netHistory;
+    
+    // moves applied by makeMove(), packed as previous toMove | color | kind | from | to, so unmakeMove() can undo them
+    private int[] history;
+    private int historySize;
     
     /**
      * private Board constructor to prevent the user from using this no parameter constructor
@@ -49,11 +104,83 @@ public class Board implements Cloneable{
             oppColor = 1 - color;
             mySteps = 0;
             oppSteps = 0;
-            board = new Cell[GAMESIZE][GAMESIZE];
-            board[0][0] = new Cell(0, 0, CORNER);
-            board[0][7] = new Cell(0, 7, CORNER);
-            board[7][0] = new Cell(7, 0, CORNER);
-            board[7][7] = new Cell(7, 7, CORNER);
+            blackChips = 0;
+            whiteChips = 0;
+            occupied = 0;
+            edges = new long[GAMESIZE * GAMESIZE];
+            pairs = new int[2];
+            forbidden = new long[2];
+            history = new int[GAMESIZE * GAMESIZE];
+            historySize = 0;
+            noNetwork = 0;
+            netDirty = new long[2];
+            netHistory = new long[3 * GAMESIZE * GAMESIZE];
+            toMove = WHITE;
+            hashKey = 0;
+        }
+    }
+    
+    /**
+     * splitmix64 finalizer used to generate the Zobrist keys
+     *
+     * @param z: a seed
+     * @return a well-mixed 64-bit value
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+    
+    /**
+     * protected getHashKey() method
+     * The key covers every chip, the player to move and which players are past MAXSTEPS moves.
+     *
+     * @return the 64-bit Zobrist key of this Board
+     */
+    protected long getHashKey() {
+        return hashKey;
+    }
+    
+    /**
+     * protected getToMove() method
+     *
+     * @return the color of the player to move next
+     */
+    protected int getToMove() {
+        return toMove;
+    }
+    
+    /**
+     * Sets the player to move next and updates the hash key
+     *
+     * @param color: BLACK or WHITE
+     */
+    private void setToMove(int color) {
+        if (color != toMove) {
+            hashKey ^= BLACK_TO_MOVE_KEY;
+            toMove = color;
+        }
+    }
+    
+    /**
+     * Sets the number of moves made by a color and updates the hash key
+     * when the color enters or leaves the step phase
+     *
+     * @param color: myColor or oppColor
+     * @param n: the number of moves
+     */
+    private void setSteps(int color, int n) {
+        int old;
+        if (color == myColor) {
+            old = mySteps;
+            mySteps = n;
+        } else {
+            old = oppSteps;
+            oppSteps = n;
+        }
+        if ((old >= MAXSTEPS) != (n >= MAXSTEPS)) {
+            hashKey ^= STEP_PHASE_KEYS[color];
         }
     }
     
@@ -65,18 +192,141 @@ public class Board implements Cloneable{
      */
     protected Object clone() throws CloneNotSupportedException {
         Board cloned = (Board) super.clone();
-        Cell[][] newCells = new Cell[GAMESIZE][GAMESIZE];
+        cloned.edges = edges.clone();
+        cloned.pairs = pairs.clone();
+        cloned.forbidden = forbidden.clone();
+        cloned.history = history.clone();
+        cloned.netDirty = netDirty.clone();
+        cloned.netHistory = netHistory.clone();
+        return cloned;
+    }
 
-        for (int i = 0; i < GAMESIZE; i++) {
-            for (int j = 0; j < GAMESIZE; j++) {
-                if (this.board[i][j] != null) {
-                  Cell newCell = (Cell)(this.board[i][j]).clone();
-                  newCells[i][j] = newCell;
-                }
+    /**
+     * protected chips() method
+     *
+     * @param color: BLACK, WHITE or CORNER
+     * @return the mask of squares holding that color
+     */
+    protected long chips(int color) {
+        if (color == BLACK) {
+            return blackChips;
+        } else if (color == WHITE) {
+            return whiteChips;
+        } else if (color == CORNER) {
+            return BitBoard.CORNERS;
+        }
+        return 0;
+    }
+
+    /**
+     * protected colorAt() method
+     *
+     * @param x: cell's column number
+     * @param y: cell's row number
+     * @return BLACK, WHITE or CORNER for an occupied position, EMPTY otherwise
+     */
+    protected int colorAt(int x, int y) {
+        long b = BitBoard.bit(x, y);
+        if ((blackChips & b) != 0) {
+            return BLACK;
+        } else if ((whiteChips & b) != 0) {
+            return WHITE;
+        } else if ((BitBoard.CORNERS & b) != 0) {
+            return CORNER;
+        }
+        return EMPTY;
+    }
+
+    /**
+     * Puts a chip of color on a square, replacing whatever chip was there
+     *
+     * @param sq: the square's bit number
+     * @param color: BLACK or WHITE
+     */
+    private void place(int sq, int color) {
+        long b = 1L << sq;
+        clear(sq);
+        hashKey ^= CHIP_KEYS[color][sq];
+        if (color == BLACK) {
+            blackChips |= b;
+        } else {
+            whiteChips |= b;
+        }
+        occupied = blackChips | whiteChips;
+        forbidden[color] = BitBoard.clusterMask(chips(color));
+        
+        //the new chip blocks every line through sq and sees the first chip along each ray
+        long blockers = (occupied | BitBoard.CORNERS) & ~b;
+        long own = chips(color) & ~b;
+        for (int d = 0; d < BitBoard.DIRECTIONS; d++) {
+            int first = BitBoard.firstBlocker(sq, d, blockers);
+            if (first < 0) {
+                continue;
+            }
+            if ((own & (1L << first)) != 0) {
+                edges[sq] |= 1L << first;
+                edges[first] |= b;
+                pairs[color]++;
+                netDirty[color] |= b | (1L << first);
+            }
+            int o = BitBoard.OPPOSITE[d];
+            int other = d < o ? BitBoard.firstBlocker(sq, o, blockers) : -1;
+            if (other >= 0 && (edges[first] & (1L << other)) != 0) {
+                edges[first] &= ~(1L << other);
+                edges[other] &= ~(1L << first);
+                pairs[(blackChips & (1L << first)) != 0 ? BLACK : WHITE]--;
             }
         }
-        cloned.setBoard(newCells);
-        return cloned;  
+    }
+
+    /**
+     * Empties a square
+     *
+     * @param sq: the square's bit number
+     */
+    private void clear(int sq) {
+        long b = ~(1L << sq);
+        if ((occupied & ~b) == 0) {
+            return;
+        }
+        int color = (blackChips & ~b) != 0 ? BLACK : WHITE;
+        hashKey ^= CHIP_KEYS[color][sq];
+        blackChips &= b;
+        whiteChips &= b;
+        occupied &= b;
+        forbidden[color] = BitBoard.clusterMask(chips(color));
+        
+        //drop the chip's edges and reconnect the chips on either side of it
+        long partners = edges[sq];
+        pairs[color] -= Long.bitCount(partners);
+        while (partners != 0) {
+            edges[Long.numberOfTrailingZeros(partners)] &= b;
+            partners &= partners - 1;
+        }
+        edges[sq] = 0;
+        long blockers = occupied | BitBoard.CORNERS;
+        for (int d = 0; d < BitBoard.DIRECTIONS; d++) {
+            int o = BitBoard.OPPOSITE[d];
+            if (d > o) {
+                continue;
+            }
+            int first = BitBoard.firstBlocker(sq, d, blockers);
+            int other = BitBoard.firstBlocker(sq, o, blockers);
+            if (first < 0 || other < 0) {
+                continue;
+            }
+            long pair = (1L << first) | (1L << other);
+            if ((blackChips & pair) == pair) {
+                netDirty[BLACK] |= pair;
+            } else if ((whiteChips & pair) == pair) {
+                netDirty[WHITE] |= pair;
+            } else {
+                continue;
+            }
+            edges[first] |= 1L << other;
+            edges[other] |= 1L << first;
+            pairs[(blackChips & pair) != 0 ? BLACK : WHITE]++;
+        }
     }
   
     /**
@@ -88,7 +338,10 @@ public class Board implements Cloneable{
      */
     protected Cell getCell(int x, int y) {
         if (x >= 0 && x < GAMESIZE && y >= 0 && y < GAMESIZE) {
-            return board[x][y];
+            int color = colorAt(x, y);
+            if (color != EMPTY) {
+                return new Cell(x, y, color);
+            }
         }
         return null;
     }
@@ -105,7 +358,7 @@ public class Board implements Cloneable{
             int y = id % OFFSET;
             if (x >= 0 && x < GAMESIZE &&
                 y >= 0 && y < GAMESIZE) {
-                return board[x][y];
+                return getCell(x, y);
             }
         }
         return null;
@@ -117,10 +370,7 @@ public class Board implements Cloneable{
      * @param cell: a Cell to be placed on this Board
      */
     protected void setCell(Cell cell) {
-        if (cell.x() >= 0 && cell.x() < GAMESIZE &&
-            cell.y() >= 0 && cell.y() < GAMESIZE) {
-            board[cell.x()][cell.y()] = cell;
-        }
+        setCell(cell.x(), cell.y(), cell.getColor());
     }
     
     /**
@@ -133,19 +383,10 @@ public class Board implements Cloneable{
     protected void setCell(int x, int y, int color) {
         if (x >= 0 && x < GAMESIZE && y >= 0 && y < GAMESIZE &&
             (color == WHITE || color == BLACK)) {
-            board[x][y] = new Cell(x, y, color);
+            place(BitBoard.square(x, y), color);
         }
     }
     
-    /**
-     * protected setBoard() method
-     *
-     * @param newBoard: a Board object to be set to this Board
-     */
-    protected void setBoard(Cell[][] newBoard) {
-        this.board = newBoard;
-    }
-    
     /**
      * protected getMySteps() method
      *
@@ -164,13 +405,28 @@ public class Board implements Cloneable{
         return oppSteps;
     }
     
+    /**
+     * protected getSteps() method
+     *
+     * @param color: myColor or oppColor
+     * @return the number of moves made by color, or -1 for any other color
+     */
+    protected int getSteps(int color) {
+        if (color == myColor) {
+            return mySteps;
+        } else if (color == oppColor) {
+            return oppSteps;
+        }
+        return -1;
+    }
+    
     /**
      * protected setMySteps() method
      *
      * @param n: my number of moves
      */
     protected void setMySteps(int n) {
-        mySteps = n;
+        setSteps(myColor, n);
     }
     
     /**
@@ -179,7 +435,7 @@ public class Board implements Cloneable{
      * @param n: my opponent's number of moves
      */
     protected void setOppSteps(int n) {
-        oppSteps = n;
+        setSteps(oppColor, n);
     }
     
     /**
@@ -223,7 +479,7 @@ public class Board implements Cloneable{
             x < 0 || x >= GAMESIZE || y < 0 || y >= GAMESIZE) {
             return;
         }    
-        board[x][y] = null;
+        clear(BitBoard.square(x, y));
     }
     
     /**
@@ -236,14 +492,14 @@ public class Board implements Cloneable{
         DList start = new DList();
         if (color == WHITE) {
             for (int i = 1; i < GAMESIZE-1; i++) {
-                if (board[0][i] != null) {
-                    start.add(board[0][i]);
+                if (getCell(0, i) != null) {
+                    start.add(getCell(0, i));
                 }
             }
         } else if (color == BLACK) {
             for (int i = 1; i < GAMESIZE-1; i++) {
-                if (board[i][0] != null) {
-                    start.add(board[i][0]);
+                if (getCell(i, 0) != null) {
+                    start.add(getCell(i, 0));
                 }
             }
         }
@@ -260,14 +516,14 @@ public class Board implements Cloneable{
         DList target = new DList();
         if (color == WHITE) {
             for (int i = 1; i < GAMESIZE-1; i++) {
-                if (board[7][i] != null) {
-                    target.add(board[7][i]);
+                if (getCell(7, i) != null) {
+                    target.add(getCell(7, i));
                 }
             }
         } else if (color == BLACK) {
             for (int i = 1; i < GAMESIZE-1; i++) {
-                if (board[i][7] != null) {
-                    target.add(board[i][7]);
+                if (getCell(i, 7) != null) {
+                    target.add(getCell(i, 7));
                 }
             }
         }
@@ -283,122 +539,88 @@ public class Board implements Cloneable{
      */
     protected DList connectionFinder(Cell c) {
         DList cells = new DList();
-        int x = c.x();
-        int y = c.y();
+        int sq = BitBoard.square(c.x(), c.y());
         int color = c.getColor();
-        int nx;
-        int ny;
-        
-        //Check all directions from the specific Cell
-        
-        //South direction
-        nx = x;
-        ny = y + 1;
-        while (ny < GAMESIZE) {
-            if (board[nx][ny] != null) {
-                if (board[nx][ny].getColor() == color) {
-                    cells.add(new Cell(nx, ny, color));
-                }
-                break;
-            }
-            ny++;
-        }
-        
-        //North direction
-        nx = x;
-        ny = y - 1;
-        while (ny >= 0) {
-            if (board[nx][ny] != null) {
-                if (board[nx][ny].getColor() == color) {
-                    cells.add(new Cell(nx, ny, color));
-                }
-                break;
-            }
-            ny--;
-        }
-        
-        //East direction
-        nx = x + 1;
-        ny = y;
-        while (nx < GAMESIZE) {
-            if (board[nx][ny] != null) {
-                if (board[nx][ny].getColor() == color) {
-                    cells.add(new Cell(nx, ny, color));
-                }
-                break;
-            }
-            nx++;
-        }
-        
-        //West direction
-        nx = x - 1;
-        ny = y;
-        while (nx >= 0) {
-            if (board[nx][ny] != null) {
-                if (board[nx][ny].getColor() == color) {
-                    cells.add(new Cell(nx, ny, color));
-                }
-                break;
-            }
-            nx--;
-        }
-        
-        //Northwest direction
-        nx = x - 1;
-        ny = y - 1;
-        while (nx >= 0 && ny >= 0) {
-            if (board[nx][ny] != null) {
-                if (board[nx][ny].getColor() == color) {
-                    cells.add(new Cell(nx, ny, color));
-                }
-                break;
-            }
-            nx--;
-            ny--;
-        }
-        
-        //Northeast direction
-        nx = x + 1;
-        ny = y - 1;
-        while (nx < GAMESIZE && ny >= 0) {
-            if (board[nx][ny] != null) {
-                if (board[nx][ny].getColor() == color) {
-                    cells.add(new Cell(nx, ny, color));
-                }
-                break;
+        long blockers = occupied | BitBoard.CORNERS;
+        long own = chips(color);
+
+        //Check all directions from the specific Cell: S, N, E, W, NW, NE, SW, SE
+        for (int d = 0; d < BitBoard.DIRECTIONS; d++) {
+            int b = BitBoard.firstBlocker(sq, d, blockers);
+            if (b >= 0 && (own & (1L << b)) != 0) {
+                cells.add(new Cell(BitBoard.x(b), BitBoard.y(b), color));
             }
-            nx++;
-            ny--;
         }
-        
-        //Southwest direction
-        nx = x - 1;
-        ny = y + 1;
-        while (nx >= 0 && ny < GAMESIZE) {
-            if (board[nx][ny] != null) {
-                if (board[nx][ny].getColor() == color) {
-                    cells.add(new Cell(nx, ny, color));
-                }
-                break;
-            }
-            nx--;
-            ny++;
+        return cells;
+    }
+
+    /**
+     * protected edges() method
+     * Reads the visibility graph, which is updated whenever a chip is placed or removed.
+     *
+     * @param sq: the bit number of a square
+     * @return a mask of the chips connected to the chip on sq, or 0 if sq is empty
+     */
+    protected long edges(int sq) {
+        return edges[sq];
+    }
+    
+    /**
+     * protected knownNoNetwork() method
+     *
+     * @param color: BLACK or WHITE
+     * @return true if the last network check of color recorded with recordNetwork() found none
+     */
+    protected boolean knownNoNetwork(int color) {
+        return ((noNetwork >>> color) & 1) != 0;
+    }
+    
+    /**
+     * protected networkDirty() method
+     * A network that appeared since the last check must use a new edge, so it contains one of these chips.
+     *
+     * @param color: BLACK or WHITE
+     * @return a mask of the chips of color that gained an edge since the last recorded network check
+     */
+    protected long networkDirty(int color) {
+        return netDirty[color];
+    }
+    
+    /**
+     * protected recordNetwork() method
+     * Stores the result of a network check, which starts a new set of dirty chips for color.
+     *
+     * @param color: BLACK or WHITE
+     * @param found: true if color has a network
+     */
+    protected void recordNetwork(int color, boolean found) {
+        if (found) {
+            noNetwork &= ~(1 << color);
+        } else {
+            noNetwork |= 1 << color;
         }
-        
-        //Southeast direction
-        nx = x + 1;
-        ny = y + 1;
-        while (nx < GAMESIZE && ny < GAMESIZE) {
-            if (board[nx][ny] != null) {
-                if (board[nx][ny].getColor() == color) {
-                    cells.add(new Cell(nx, ny, color));
-                }
-                break;
+        netDirty[color] = 0;
+    }
+    
+    /**
+     * protected connections() method
+     * Finds the chips of a color that a chip of that color on sq would be connected to,
+     * i.e. the first chip in each of the 8 directions if it has the same color.
+     *
+     * @param sq: the bit number of a square
+     * @param color: BLACK, WHITE or CORNER
+     * @return a mask of the visible chips of the same color
+     */
+    protected long connections(int sq, int color) {
+        long blockers = occupied | BitBoard.CORNERS;
+        long found = 0;
+        for (int d = 0; d < BitBoard.DIRECTIONS; d++) {
+            int b = BitBoard.firstBlocker(sq, d, blockers);
+            if (b >= 0) {
+                found |= 1L << b;
             }
-            nx++;
-            ny++;
         }
-        return cells;
+        return found & chips(color);
     }
     
     /**
@@ -448,11 +670,122 @@ public class Board implements Cloneable{
             } else {
                 setOppSteps(getOppSteps() + 1);
             }
+            setToMove(1 - color);
             return true;
         }
         return false;
     }
     
+    /**
+     * protected makeMove() performs a move on this Board in place without checking it.
+     * The move is recorded so that unmakeMove() can restore this Board exactly.
+     *
+     * @param m: a legal ADD or STEP Move for color
+     * @param color: the integer color of the chip to be used for this move
+     */
+    protected void makeMove(Move m, int color) {
+        makeMove(packMove(m), color);
+    }
+
+    /**
+     * protected makeMove() overloaded method for a packed move
+     *
+     * @param move: a legal ADD or STEP move for color, packed by packMove() or generateMoves()
+     * @param color: the integer color of the chip to be used for this move
+     */
+    protected void makeMove(int move, int color) {
+        if (historySize == history.length) {
+            int[] grown = new int[history.length * 2];
+            System.arraycopy(history, 0, grown, 0, historySize);
+            history = grown;
+            long[] grownNet = new long[netHistory.length * 2];
+            System.arraycopy(netHistory, 0, grownNet, 0, 3 * historySize);
+            netHistory = grownNet;
+        }
+        netHistory[3 * historySize] = noNetwork;
+        netHistory[3 * historySize + 1] = netDirty[BLACK];
+        netHistory[3 * historySize + 2] = netDirty[WHITE];
+        int kind = move >>> 12;
+        int to = (move >>> 6) & 63;
+        int from = to;
+        if (kind == Move.STEP) {
+            from = move & 63;
+            clear(from);
+        }
+        place(to, color);
+        if (color == myColor) {
+            setSteps(color, mySteps + 1);
+        } else {
+            setSteps(color, oppSteps + 1);
+        }
+        int previous = toMove;
+        setToMove(1 - color);
+        history[historySize++] = (previous << 25) | (color << 24) | (kind << 16) | (from << 8) | to;
+    }
+
+    /**
+     * protected unmakeMove() takes back the last move performed by makeMove(),
+     * including the step count of the player who made it.
+     */
+    protected void unmakeMove() {
+        if (historySize == 0) {
+            return;
+        }
+        int packed = history[--historySize];
+        int color = (packed >>> 24) & 1;
+        int kind = (packed >>> 16) & 0xFF;
+        int from = (packed >>> 8) & 0xFF;
+        int to = packed & 0xFF;
+        clear(to);
+        if (kind == Move.STEP) {
+            place(from, color);
+        }
+        if (color == myColor) {
+            setSteps(color, mySteps - 1);
+        } else {
+            setSteps(color, oppSteps - 1);
+        }
+        setToMove(packed >>> 25);
+        noNetwork = (int) netHistory[3 * historySize];
+        netDirty[BLACK] = netHistory[3 * historySize + 1];
+        netDirty[WHITE] = netHistory[3 * historySize + 2];
+    }
+    
+    /**
+     * Packs a move into one int as kind | x1 | y1 | x2 | y2, three bits per coordinate.
+     * Since a square's bit number is x * GAMESIZE + y, bits 6-11 hold the target square
+     * and bits 0-5 hold the source square of a STEP move.
+     *
+     * @param m: a Move
+     * @return the packed move; 0 for a QUIT move
+     */
+    protected static int packMove(Move m) {
+        if (m.moveKind == Move.ADD) {
+            return (Move.ADD << 12) | (m.x1 << 9) | (m.y1 << 6);
+        } else if (m.moveKind == Move.STEP) {
+            return (Move.STEP << 12) | (m.x1 << 9) | (m.y1 << 6) | (m.x2 << 3) | m.y2;
+        }
+        return 0;
+    }
+
+    /**
+     * Creates the Move object for a packed move
+     *
+     * @param packed: a move packed by packMove()
+     * @return the Move
+     */
+    protected static Move unpackMove(int packed) {
+        int kind = packed >>> 12;
+        int x1 = (packed >>> 9) & 7;
+        int y1 = (packed >>> 6) & 7;
+        if (kind == Move.ADD) {
+            return new Move(x1, y1);
+        } else if (kind == Move.STEP) {
+            return new Move(x1, y1, (packed >>> 3) & 7, packed & 7);
+        }
+        return new Move();
+    }
+    
     /**
      * protected isValidMove() method
      * If the move is an add move, calls isValidAddMove.
@@ -482,25 +815,21 @@ public class Board implements Cloneable{
     
     /**
      * protected isValidStepMove() method
-     * Clones the board, removes the cell to be moved, then calls isValidAddMove.
+     * Checks the target square as an add move with the chip to be moved left out of
+     * the masks, so the board does not have to be copied.
      *
      * @param m: a STEP Move to be checked for its validity
      * @param color: the integer of the chip to be used for this step move
      * @return a boolean value representing the success or failure for this step move check
      */
     protected boolean isValidStepMove(Move m, int color) {
-        if (board[m.x1][m.y1] != null || board[m.x2][m.y2] == null || board[m.x2][m.y2].getColor() != color) {
+        if (!BitBoard.inBounds(m.x1, m.y1) || !BitBoard.inBounds(m.x2, m.y2) ||
+            colorAt(m.x1, m.y1) != EMPTY || colorAt(m.x2, m.y2) != color) {
             return false;
         }
-        Board newBoard = null;
-        try {
-            newBoard = (Board) this.clone();
-        } catch (CloneNotSupportedException cnsEx) {
-        }
-        newBoard.remove(m.x2, m.y2);
-        boolean isValid = newBoard.isValidAddMove(new Move(m.x1, m.y1), color);
-        newBoard = null;
-        return isValid;
+        long from = BitBoard.bit(m.x2, m.y2);
+        return canPlace(BitBoard.square(m.x1, m.y1), chips(color) & ~from,
+                        occupied | BitBoard.BANNED[color]);
     }
     
     /**
@@ -539,40 +868,47 @@ public class Board implements Cloneable{
      * @return a boolean value representing the success or failure of this add move check
      */
     protected boolean isValidAddMove(int x, int y, int color) {
-        if (board[x][y] != null) {
-            return false;
-        }
         if (x < 0 || x >= GAMESIZE ||
             y < 0 || y >= GAMESIZE ||
             (color != BLACK && color != WHITE)) {
             return false;
         }
-        if (color == BLACK) {
-            //WHITE goal areas
-            if (x == 0 || x == 7) {
-                return false;
-            }
-        }
-        if (color == WHITE) {
-            //BLACK goal areas
-            if (y == 0 || y == 7) {
-                return false;
-            }
+        return ((occupied | BitBoard.BANNED[color] | forbidden[color]) & BitBoard.bit(x, y)) == 0;
+    }
+    
+    /**
+     * protected legalAdds() method
+     *
+     * @param color: BLACK or WHITE
+     * @return a mask of the squares where a chip of color may be added, ignoring the step count
+     */
+    protected long legalAdds(int color) {
+        return ~(occupied | BitBoard.BANNED[color] | forbidden[color]);
+    }
+    
+    /**
+     * private canPlace() method
+     * Checks a square against a set of blocked squares and for clusters with a set of chips.
+     * Step moves pass masks with the moving chip left out of own and kept in blocked.
+     *
+     * @param sq: the bit number of the target square
+     * @param own: the chips of the moving color that stay on the board
+     * @param blocked: occupied squares, corners and the opponent's goal areas
+     * @return true if a chip of that color may be put on sq
+     */
+    private static boolean canPlace(int sq, long own, long blocked) {
+        //Occupied positions, corners and the opponent's goal areas
+        if ((blocked & (1L << sq)) != 0) {
+            return false;
         }
         //Checking for clusters
-        DList n = neighbors(x, y, color);
-        if (n.size() == 0) {
+        long n = BitBoard.NEIGHBORS[sq] & own;
+        if (n == 0) {
             return true;
-        } else if (n.size() >= 2) {
+        } else if ((n & (n - 1)) != 0) {
             return false;
         } else {
-            for (int i = 0; i < n.size(); i++) {
-                DList cList = neighbors((Cell) n.get(i));
-                if (cList.size() >= 1) {
-                    return false;
-                }
-            }
-            return true;
+            return (BitBoard.NEIGHBORS[Long.numberOfTrailingZeros(n)] & own) == 0;
         }
     }
     
@@ -608,45 +944,11 @@ public class Board implements Cloneable{
      */
     protected DList neighbors(int x, int y, int color) {
         DList cList = new DList();
-        if (x-1 >= 0 && y-1 >= 0) {
-            if (board[x-1][y-1] != null && board[x-1][y-1].getColor() == color) {
-                cList.add(board[x-1][y-1]);
-            }
-        }
-        if (x-1 >= 0) {
-            if (board[x-1][y]   != null && board[x-1][y].getColor() == color) {
-                cList.add(board[x-1][y]);
-            }
-        }
-        if (x-1 >= 0 && y+1 < GAMESIZE) {
-            if (board[x-1][y+1] != null && board[x-1][y+1].getColor() == color) {
-                cList.add(board[x-1][y+1]);
-            }
-        }
-        if (y-1 >= 0) {
-            if (board[x][y-1]   != null && board[x][y-1].getColor() == color) {
-                cList.add(board[x][y-1]);
-            }
-        }
-        if (y+1 < GAMESIZE) {
-            if (board[x][y+1]   != null && board[x][y+1].getColor() == color) {
-                cList.add(board[x][y+1]);
-            }
-        }
-        if (x+1 < GAMESIZE && y-1 >= 0) {
-            if (board[x+1][y-1] != null && board[x+1][y-1].getColor() == color) {
-                cList.add(board[x+1][y-1]);
-            }
-        }
-        if (x+1 < GAMESIZE) {
-            if (board[x+1][y]   != null && board[x+1][y].getColor() == color) {
-                cList.add(board[x+1][y]);
-            }
-        }
-        if (x+1 < GAMESIZE && y+1 < GAMESIZE) {
-            if (board[x+1][y+1] != null && board[x+1][y+1].getColor() == color) {
-                cList.add(board[x+1][y+1]);
-            }
+        long n = BitBoard.NEIGHBORS[BitBoard.square(x, y)] & chips(color);
+        while (n != 0) {
+            int sq = Long.numberOfTrailingZeros(n);
+            cList.add(new Cell(BitBoard.x(sq), BitBoard.y(sq), color));
+            n &= n - 1;
         }
         return cList;
     }
@@ -662,7 +964,7 @@ public class Board implements Cloneable{
         DList legalCells = new DList();
         for (int i = 0; i < GAMESIZE; i++) {
             for (int j = 0; j < GAMESIZE; j++) {
-                if (this.board[i][j] == null) {
+                if (colorAt(i, j) == EMPTY) {
                     if (isValidAddMove(i, j, color)) {
                         Cell newCell = new Cell(i, j, color);
                         legalCells.add(newCell);
@@ -683,94 +985,66 @@ public class Board implements Cloneable{
      */
     protected DList availableMoves(int color) {
         DList legalMoves = new DList();
-        if ((color == myColor && mySteps < MAXSTEPS) || (color == oppColor && oppSteps < MAXSTEPS)) {
-            DList ac = availableCells(color);
-            for (int i = 0; i < ac.size(); i++) {
-                Cell c = (Cell) ac.get(i);
-                legalMoves.add(new Move(c.x(), c.y()));
-            }
-        } else if ((color == myColor && mySteps >= MAXSTEPS) || (color == oppColor && oppSteps >= MAXSTEPS)) {
-            DList placedCells = new DList();
-            for (int i = 0; i < GAMESIZE; i++) {
-                for (int j = 0; j < GAMESIZE; j++) {
-                    if (board[i][j] != null && board[i][j].getColor() == color) {
-                        placedCells.add(board[i][j]);
-                    }
-                }
+        int[] buffer = new int[MAXMOVES];
+        int n = generateMoves(color, buffer);
+        for (int i = 0; i < n; i++) {
+            legalMoves.add(unpackMove(buffer[i]));
+        }
+        return legalMoves;
+    }
+    
+    /**
+     * Writes all possible add or step moves into a buffer without creating Move objects.
+     * Moves are packed as by packMove() and come in the same order as from availableMoves():
+     * add moves by target square, step moves by source square and then target square.
+     *
+     * @param color: the integer color of the chip
+     * @param buffer: an array of at least MAXMOVES ints that receives the moves
+     * @return the number of moves written to buffer
+     */
+    protected int generateMoves(int color, int[] buffer) {
+        int n = 0;
+        int steps = getSteps(color);
+        if (steps < 0) {
+            return 0;
+        }
+        if (steps < MAXSTEPS) {
+            long legal = legalAdds(color);
+            while (legal != 0) {
+                buffer[n++] = (Move.ADD << 12) | (Long.numberOfTrailingZeros(legal) << 6);
+                legal &= legal - 1;
             }
-            for (int i = 0; i < placedCells.size(); i++) {
-                Board newBoard = null;
-                try {
-                    newBoard = (Board) this.clone();
-                } catch (CloneNotSupportedException cnsEx) {
-                }
-                Cell c = (Cell) placedCells.get(i);
-                newBoard.remove(c);
-                DList newList = newBoard.availableCells(color);
-                for (int j = 0; j < newList.size(); j++) {
-                    Cell cx = (Cell) newList.get(j);
-                    if (cx.id() != c.id()) {
-                        legalMoves.add(new Move(cx.x(), cx.y(), c.x(), c.y()));
-                    }
+        } else {
+            //each chip is lifted by leaving it out of own; its square stays blocked,
+            //since a chip may not step onto the square it came from
+            long own = chips(color);
+            long blocked = occupied | BitBoard.BANNED[color];
+            long chipsLeft = own;
+            while (chipsLeft != 0) {
+                int from = Long.numberOfTrailingZeros(chipsLeft);
+                long legal = ~(blocked | BitBoard.clusterMask(own & ~(1L << from)));
+                while (legal != 0) {
+                    buffer[n++] = (Move.STEP << 12) | (Long.numberOfTrailingZeros(legal) << 6) | from;
+                    legal &= legal - 1;
                 }
-                newBoard = null;
+                chipsLeft &= chipsLeft - 1;
             }
         }
-        return legalMoves;
+        return n;
     }
     
     /**
-     * Counts all the pairs of chips of a certain color that are visible to each other
+     * Counts all the pairs of chips of a certain color that are visible to each other.
+     * The count is kept up to date by place() and clear(), so this takes constant time.
      *
      * @param color: an integer color
      * @return the number of pairs of visible cells
     */
     protected int visibleCells(int color) {
-        int pairs = 0;
-
-        int othercolor;
-        if (color == WHITE) {
-            othercolor = BLACK;
-        }
-        else {
-            othercolor = WHITE;
-        }
-        DList currentConnections = new DList();
-        for (int i = 0; i < GAMESIZE; i++) {
-            for (int j = 0; j < GAMESIZE; j++) {
-                if (this.getCell(i,j) == null) {
-                    continue;
-                }
-                else if (this.getCell(i,j).getColor() == CORNER) {
-                    continue;
-                }
-                
-                else if (this.getCell(i,j).getColor() == othercolor) {
-                    continue;
-                }
-                else {
-                    currentConnections = connectionFinder(getCell(i,j));
-                    if (currentConnections == null) {
-                        continue;
-                    }
-                    else {
-                        pairs += currentConnections.size();
-                        
-                        for (int x = 0; x < currentConnections.size(); x++) {
-                            if (((Cell) currentConnections.get(x)).x() < i) {
-                                pairs--;
-                                
-                            }
-                            else if (((Cell) currentConnections.get(x)).x() == i && (((Cell) currentConnections.get(x)).y() < j)) {
-                                pairs--;
-                                
-                            }
-                        }
-                    }
-                }
-            }
+        if (color != BLACK && color != WHITE) {
+            return 0;
         }
-        return pairs;
+        return pairs[color];
     }
 
     /**
@@ -781,29 +1055,15 @@ public class Board implements Cloneable{
      * @return true if the color has a chip in the specified goal
      */
     protected boolean inGoal(int color, int side) {
-        boolean inGoal = false;
-        int coord;
-        if (side == 0) {
-            coord = 0;
-        }
-        else {
-            coord = GAMESIZE-1;
-        }
+        long goal;
         if (color == BLACK) {
-            for (int y = 0; y < GAMESIZE; y++) {
-                if (this.getCell(coord,y) != null) {
-                    inGoal = true;
-                }
-            }
-        }
-        else {
-            for (int x = 0; x < GAMESIZE; x++) {
-                if (this.getCell(x,coord) != null) {
-                    inGoal = true;
-                }
-            }
+            goal = side == 0 ? BitBoard.TOP_GOAL : BitBoard.BOTTOM_GOAL;
+        } else if (color == WHITE) {
+            goal = side == 0 ? BitBoard.LEFT_GOAL : BitBoard.RIGHT_GOAL;
+        } else {
+            return false;
         }
-        return inGoal;
+        return (chips(color) & goal) != 0;
     }
     
     /**
@@ -815,8 +1075,8 @@ public class Board implements Cloneable{
         StringBuilder sb = new StringBuilder(GAMESIZE * GAMESIZE);
         for (int j = 0; j < GAMESIZE; j++) {
             for (int i = 0; i < GAMESIZE; i++) {
-                if (board[i][j] != null) {
-                    sb.append((board[i][j]).getColor());
+                if (colorAt(i, j) != EMPTY) {
+                    sb.append(colorAt(i, j));
                 } else {
                     sb.append("-");
                 }
@@ -0,0 +1,108 @@
+/* EvalCache.java */
+
+package player;
+
+/**
+ *  A fixed-size cache of leaf scores for MachinePlayer.evaluate().
+ *
+ *  The cache is direct-mapped: a position's hash key picks one slot, which
+ *  holds the full key and the score in two parallel arrays.  A new score
+ *  always replaces the one in its slot.  The hash key includes the color to
+ *  move, and a cache belongs to one player and one search thread, so the key
+ *  alone identifies the score.
+ *
+ *  Hits, misses and overwrites of another position's score are counted so
+ *  the cache's use can be checked.
+ */
+public class EvalCache {
+
+    protected static final int DEFAULTSIZE = 1 << 16;
+
+    private long[] keys;
+    private int[] scores;
+    private int mask;
+    private long hits;
+    private long misses;
+    private long overwrites;
+
+    /**
+     * Constructs a cache with at least the given number of slots
+     *
+     * @param size: the number of slots; rounded up to a power of two
+     */
+    public EvalCache(int size) {
+        int slots = 1;
+        while (slots < size && slots < (1 << 30)) {
+            slots *= 2;
+        }
+        keys = new long[slots];
+        scores = new int[slots];
+        mask = slots - 1;
+    }
+
+    /**
+     * probe() looks up a score
+     *
+     * @param key: the position's hash key
+     * @return true if the score is in the cache; it can then be read with score()
+     */
+    protected boolean probe(long key) {
+        if (keys[(int) key & mask] == key && key != 0) {
+            hits++;
+            return true;
+        }
+        misses++;
+        return false;
+    }
+
+    /**
+     * @param key: the hash key of a position for which probe() returned true
+     * @return the cached score
+     */
+    protected int score(long key) {
+        return scores[(int) key & mask];
+    }
+
+    /**
+     * store() records a score
+     *
+     * @param key: the position's hash key
+     * @param score: the position's score
+     */
+    protected void store(long key, int score) {
+        int i = (int) key & mask;
+        if (keys[i] != 0 && keys[i] != key) {
+            overwrites++;
+        }
+        keys[i] = key;
+        scores[i] = score;
+    }
+
+    /**
+     * @return the number of slots in the cache
+     */
+    protected int capacity() {
+        return keys.length;
+    }
+
+    /**
+     * @return the number of probes that found their score
+     */
+    public long hits() {
+        return hits;
+    }
+
+    /**
+     * @return the number of probes that did not find their score
+     */
+    public long misses() {
+        return misses;
+    }
+
+    /**
+     * @return the number of stores that replaced the score of another position
+     */
+    public long overwrites() {
+        return overwrites;
+    }
+}
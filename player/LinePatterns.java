@@ -0,0 +1,189 @@
+/* LinePatterns.java */
+
+package player;
+
+/**
+ *  Lookup tables for scoring the board one line at a time.
+ *
+ *  Every column, row and diagonal with at least two squares is a line.  The
+ *  contents of a line are read as a base-3 number, one digit per square from
+ *  its first square (0 empty, 1 black, 2 white), so a line of at most 8
+ *  squares has one of 3^8 patterns.  Corners are read as empty: they only
+ *  ever lie at the end of a line, so they never block a line of sight.
+ *
+ *  For each pattern the tables give the line's visibility pairs per color:
+ *  two chips of the same color with only empty squares between them.  Each
+ *  pair is also one edge at each of its two chips, so the line's share of
+ *  MachinePlayer.connectivityEvaluation() follows from the same counts.  The
+ *  tables are built when the class is loaded.
+ *
+ *  Board keeps the pair counts up to date as moves are made, which is cheaper
+ *  than reading every line, so the tables are a from-scratch check on those
+ *  counts and on the evaluation terms built from them; main() compares them
+ *  on random games.
+ */
+public final class LinePatterns {
+
+    protected static final int PATTERNS = 6561;
+
+    // the squares of every line, in order along the line
+    protected static final int[][] LINES;
+
+    // PAIRS[pattern] holds BLACK's pairs in bits 0-7 and WHITE's pairs in bits 8-15
+    protected static final int[] PAIRS = new int[PATTERNS];
+
+    // MachinePlayer.connectivityEvaluation() from BLACK's point of view: visibility pairs
+    // plus two edge ends per pair, for BLACK minus for WHITE
+    protected static final int[] CONNECTIVITY = new int[PATTERNS];
+
+    static {
+        int[][] lines = new int[8 + 8 + 13 + 13][];
+        int n = 0;
+        for (int x = 0; x < Board.GAMESIZE; x++) {
+            lines[n++] = line(x, 0, 0, 1);
+        }
+        for (int y = 0; y < Board.GAMESIZE; y++) {
+            lines[n++] = line(0, y, 1, 0);
+        }
+        //diagonals going down-right start on the top row or the left column,
+        //diagonals going up-right start on the bottom row or the left column
+        for (int start = 1; start < Board.GAMESIZE - 1; start++) {
+            lines[n++] = line(start, 0, 1, 1);
+            lines[n++] = line(0, start, 1, 1);
+            lines[n++] = line(start, Board.GAMESIZE - 1, 1, -1);
+            lines[n++] = line(0, start, 1, -1);
+        }
+        lines[n++] = line(0, 0, 1, 1);
+        lines[n++] = line(0, Board.GAMESIZE - 1, 1, -1);
+        LINES = lines;
+
+        for (int pattern = 0; pattern < PATTERNS; pattern++) {
+            int[] pairs = new int[2];
+            int last = Board.EMPTY;
+            int rest = pattern;
+            for (int i = 0; i < Board.GAMESIZE; i++) {
+                int digit = rest % 3;
+                rest /= 3;
+                if (digit == 0) {
+                    continue;
+                }
+                int color = digit == 1 ? Board.BLACK : Board.WHITE;
+                if (color == last) {
+                    pairs[color]++;
+                }
+                last = color;
+            }
+            PAIRS[pattern] = pairs[Board.BLACK] | (pairs[Board.WHITE] << 8);
+            CONNECTIVITY[pattern] = 3 * (pairs[Board.BLACK] - pairs[Board.WHITE]);
+        }
+    }
+
+    /**
+     * private LinePatterns constructor; this class only holds static tables
+     */
+    private LinePatterns() {
+    }
+
+    /**
+     * @param x: column number of the first square
+     * @param y: row number of the first square
+     * @param dx: column step
+     * @param dy: row step
+     * @return the bit numbers of the squares from (x, y) to the edge of the board
+     */
+    private static int[] line(int x, int y, int dx, int dy) {
+        int length = 0;
+        while (BitBoard.inBounds(x + length * dx, y + length * dy)) {
+            length++;
+        }
+        int[] squares = new int[length];
+        for (int i = 0; i < length; i++) {
+            squares[i] = BitBoard.square(x + i * dx, y + i * dy);
+        }
+        return squares;
+    }
+
+    /**
+     * @param board: a board
+     * @param line: the squares of a line
+     * @return the pattern number of the line on board
+     */
+    protected static int pattern(Board board, int[] line) {
+        int pattern = 0;
+        for (int i = line.length - 1; i >= 0; i--) {
+            long b = 1L << line[i];
+            pattern *= 3;
+            if ((board.blackChips & b) != 0) {
+                pattern += 1;
+            } else if ((board.whiteChips & b) != 0) {
+                pattern += 2;
+            }
+        }
+        return pattern;
+    }
+
+    /**
+     * pairs() counts the visibility pairs of a color with one lookup per line
+     *
+     * @param board: a board
+     * @param color: BLACK or WHITE
+     * @return the number of pairs of chips of color that see each other
+     */
+    protected static int pairs(Board board, int color) {
+        int shift = color == Board.BLACK ? 0 : 8;
+        int total = 0;
+        for (int i = 0; i < LINES.length; i++) {
+            total += (PAIRS[pattern(board, LINES[i])] >>> shift) & 0xFF;
+        }
+        return total;
+    }
+
+    /**
+     * connectivity() scores the visibility and edge count terms with one lookup per line
+     *
+     * @param board: a board
+     * @param color: the color whose point of view is taken
+     * @return MachinePlayer.connectivityEvaluation() for a player of color
+     */
+    protected static int connectivity(Board board, int color) {
+        int total = 0;
+        for (int i = 0; i < LINES.length; i++) {
+            total += CONNECTIVITY[pattern(board, LINES[i])];
+        }
+        return color == Board.BLACK ? total : -total;
+    }
+
+    /**
+     * Plays random games and checks the tables after every move: the pairs of each color
+     * against Board.visibleCells(), and connectivity() against
+     * MachinePlayer.connectivityEvaluation() of a player of each color.
+     */
+    public static void main(String[] args) {
+        java.util.Random random = new java.util.Random(25);
+        int[] moves = new int[Board.MAXMOVES];
+        int checked = 0;
+        int wrong = 0;
+        MachinePlayer[] players = {new MachinePlayer(Board.BLACK), new MachinePlayer(Board.WHITE)};
+        for (int game = 0; game < 200; game++) {
+            Board board = new Board(Board.WHITE);
+            int color = Board.WHITE;
+            for (int ply = 0; ply < 60; ply++) {
+                int n = board.generateMoves(color, moves);
+                if (n == 0) {
+                    break;
+                }
+                board.makeMove(moves[random.nextInt(n)], color);
+                color = 1 - color;
+                for (int c = Board.BLACK; c <= Board.WHITE; c++) {
+                    checked++;
+                    if (pairs(board, c) != board.visibleCells(c)
+                        || connectivity(board, c) != players[c].connectivityEvaluation(board)) {
+                        wrong++;
+                        System.out.println("mismatch for color " + c + ":\n" + board);
+                    }
+                }
+            }
+        }
+        System.out.println(checked + " positions checked, " + wrong + " mismatches");
+    }
+}
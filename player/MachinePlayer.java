@@ -2,8 +2,11 @@
 
 package player;
 
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
 import list.*;
-import dict.*;
 
 /**
  *  An implementation of an automatic Network player.  Keeps track of moves
@@ -14,14 +17,62 @@ public class MachinePlayer extends Player {
     protected int myColor;
     protected int oppColor;
     protected int searchDepth;
+    protected long timeLimit;
+    protected int threads;
+    protected int parallelMode;
     protected Board board;
     
     protected static final int DEFAULTDEPTH = 2;
     
-    private HashTableChained currentRoute;
-    private int[] visited;
-    private Stack stack;
-    private Cell[] possibleNetwork;
+    public static final int ROOT_SPLIT = 0;
+    public static final int LAZY_SMP = 1;
+    protected static final int DEFAULTTABLESIZE = 16;
+    protected static final int MAXPLY = 64;
+    
+    //move ordering scores: the table's move first, then the two killers, then by history
+    private static final int KILLER1SCORE = Integer.MAX_VALUE - 1;
+    private static final int KILLER2SCORE = Integer.MAX_VALUE - 2;
+    private static final int HISTORYLIMIT = 1 << 28;
+    
+    //evaluation: points per chip of difference in distance to a network, and the largest distance measured
+    private static final int DISTANCEWEIGHT = 4;
+    private static final int MAXDISTANCE = Board.NETWORK_SIZE;
+    
+    protected TranspositionTable table;
+    
+    //looks for forced networks before the full-width search; null when turned off
+    private ThreatSearch threats;
+    //leaf scores of this search context; null when turned off
+    private EvalCache evalCache;
+    
+    //killer moves: the last two packed moves per depth that caused a cutoff
+    private int[][] killers;
+    //history: cutoff counts weighted by depth, indexed by (color, from square, to square)
+    private int[] history;
+    
+    //per-depth move buffers, so that the search does not allocate: the moves generated at each
+    //depth, the same moves in search order, and the best move found at each depth
+    private int[][] moveLists;
+    private int[][] orderedLists;
+    private int[] orderScores;
+    private int[] bestMoves;
+    
+    //time control: the search stops once deadline (System.nanoTime()) has passed
+    private long deadline;
+    private boolean aborted;
+    private int nodes;
+    
+    //parallel search: one search context per thread, created on first use
+    private ForkJoinPool pool;
+    private MachinePlayer[] workers;
+    //Lazy SMP: the helpers' tasks, the flag that stops them, and for a helper its owner and number
+    private ForkJoinTask<?>[] helperTasks;
+    private volatile boolean stopHelpers;
+    private MachinePlayer owner;
+    private int helperId;
+    
+    //network detection for the search
+    private NetworkDetector networks;
     
   /**
    * In Board.java
@@ -40,20 +91,205 @@ public class MachinePlayer extends Player {
    * @param searchDepth: the maximum search depth for minimax
    */
   public MachinePlayer(int color, int searchDepth) {
+    this(color, searchDepth, 0);
+  }
+  
+  /**
+   * In MachinePlayer.java
+   * Creates a machine player with the given color, search depth and time limit per move.
+   * With a time limit, chooseMove() deepens its search one level at a time until either
+   * searchDepth is reached or the time is up, and plays the best move of the deepest
+   * search that finished.
+   *
+   * @param color: the MachinePlayer's color
+   * @param searchDepth: the maximum search depth for minimax
+   * @param timeLimit: milliseconds allowed per chooseMove() call; 0 for a fixed-depth search
+   */
+  public MachinePlayer(int color, int searchDepth, long timeLimit) {
+    this(color, searchDepth, timeLimit, 1);
+  }
+  
+  /**
+   * In MachinePlayer.java
+   * Creates a machine player with the given color, search depth, time limit per move and number of threads.
+   * With more than one thread the root moves are split across a ForkJoinPool; with one thread
+   * the search is single-threaded and deterministic.
+   *
+   * @param color: the MachinePlayer's color
+   * @param searchDepth: the maximum search depth for minimax
+   * @param timeLimit: milliseconds allowed per chooseMove() call; 0 for a fixed-depth search
+   * @param threads: the number of search threads
+   */
+  public MachinePlayer(int color, int searchDepth, long timeLimit, int threads) {
     if (color == Board.BLACK || color == Board.WHITE) {
       myColor = color;
       oppColor = 1 - color;
-      this.searchDepth = searchDepth;
+      this.searchDepth = Math.min(searchDepth, MAXPLY - 3);
+      this.timeLimit = timeLimit;
+      this.threads = Math.max(threads, 1);
       board = new Board(color);
+      table = new TranspositionTable(DEFAULTTABLESIZE);
+      threats = new ThreatSearch(ThreatSearch.DEFAULTTHREATS, threatNodeLimit());
+      evalCache = new EvalCache(EvalCache.DEFAULTSIZE);
       
-      currentRoute = new HashTableChained(78);
-      visited = new int[78];
-      stack = new Stack();
-      possibleNetwork = new Cell[10];
+      networks = new NetworkDetector();
+      killers = new int[MAXPLY][2];
+      history = new int[2 * 64 * 64];
+      moveLists = new int[MAXPLY][];
+      orderedLists = new int[MAXPLY][];
+      orderScores = new int[Board.MAXMOVES];
+      bestMoves = new int[MAXPLY];
     } else {
       System.exit(0);
     }
   }
+  
+  /**
+   * In MachinePlayer.java
+   * Creates a search context for one worker thread of owner.  It shares owner's game board,
+   * which is only read during a search, and owner's transposition table, and has its own
+   * network search state.
+   *
+   * @param owner: the MachinePlayer the worker searches for
+   * @param helperId: the worker's number, from 0
+   */
+  private MachinePlayer(MachinePlayer owner, int helperId) {
+    myColor = owner.myColor;
+    oppColor = owner.oppColor;
+    searchDepth = owner.searchDepth;
+    threads = 1;
+    board = owner.board;
+    table = owner.table;
+    this.owner = owner;
+    this.helperId = helperId;
+    if (owner.evalCache != null) {
+      evalCache = new EvalCache(owner.evalCache.capacity());
+    }
+    
+    networks = new NetworkDetector();
+    killers = new int[MAXPLY][2];
+    history = new int[2 * 64 * 64];
+    moveLists = new int[MAXPLY][];
+    orderedLists = new int[MAXPLY][];
+    orderScores = new int[Board.MAXMOVES];
+    bestMoves = new int[MAXPLY];
+  }
+ 
+  /**
+   * In MachinePlayer.java
+   * Chooses how a search with more than one thread is run.
+   * ROOT_SPLIT hands the root moves out to the threads.  LAZY_SMP runs the whole search on every
+   * thread at slightly different depths and move orders; the threads only share the transposition
+   * table, and the move played is the one found by the calling thread.
+   *
+   * @param mode: ROOT_SPLIT or LAZY_SMP
+   */
+  public void setParallelMode(int mode) {
+    if (mode == ROOT_SPLIT || mode == LAZY_SMP) {
+      parallelMode = mode;
+    }
+  }
+ 
+  /**
+   * In MachinePlayer.java
+   * Replaces the transposition table with one that uses at most the given amount of memory.
+   *
+   * @param megabytes: the memory budget in MB; 0 turns the transposition table off
+   */
+  public void setTableSize(int megabytes) {
+    if (megabytes > 0) {
+      table = new TranspositionTable(megabytes);
+    } else {
+      table = null;
+    }
+  }
+ 
+  /**
+   * In MachinePlayer.java
+   * Sets how many threats in a row the threat search looks for before the full-width search.
+   * Each threat is one of this player's moves after which it could complete a network next move.
+   *
+   * @param maxThreats: the largest number of threats in a forced win; 0 turns the threat search off
+   */
+  public void setThreatSearch(int maxThreats) {
+    if (maxThreats > 0) {
+      threats = new ThreatSearch(maxThreats, threatNodeLimit());
+    } else {
+      threats = null;
+    }
+  }
+  
+  /**
+   * In MachinePlayer.java
+   * A timed search also stops the threat search at a deadline, so only a fixed-depth search
+   * relies on the node limit to keep the threat search cheap.
+   *
+   * @return the number of network checks the threat search may make
+   */
+  private int threatNodeLimit() {
+    return timeLimit > 0 ? ThreatSearch.TIMEDNODELIMIT : ThreatSearch.DEFAULTNODELIMIT;
+  }
+ 
+  /**
+   * In MachinePlayer.java
+   * Replaces the leaf score caches of all search threads with ones of the given size.
+   *
+   * @param entries: the number of scores each cache holds, rounded up to a power of two; 0 turns the caches off
+   */
+  public void setEvalCacheSize(int entries) {
+    evalCache = entries > 0 ? new EvalCache(entries) : null;
+    if (workers != null) {
+      for (int i = 0; i < workers.length; i++) {
+        workers[i].evalCache = entries > 0 ? new EvalCache(entries) : null;
+      }
+    }
+  }
+ 
+  /**
+   * In MachinePlayer.java
+   * Reports how often the leaf scores of all search threads were answered by their caches.
+   *
+   * @return the total hit, miss and overwrite counts of the leaf score caches, in that order
+   */
+  public long[] evalCacheCounters() {
+    long[] counters = new long[3];
+    addEvalCounters(counters);
+    if (workers != null) {
+      for (int i = 0; i < workers.length; i++) {
+        workers[i].addEvalCounters(counters);
+      }
+    }
+    return counters;
+  }
+  
+  /**
+   * In MachinePlayer.java
+   * @param counters: the hit, miss and overwrite counts to add this search context's counts to
+   */
+  private void addEvalCounters(long[] counters) {
+    if (evalCache != null) {
+      counters[0] += evalCache.hits();
+      counters[1] += evalCache.misses();
+      counters[2] += evalCache.overwrites();
+    }
+  }
+ 
+  /**
+   * In MachinePlayer.java
+   * Reports how often the network checks of all search threads were answered by their caches.
+   *
+   * @return the total hit and miss counts of the network caches, hits first
+   */
+  public long[] networkCacheCounters() {
+    long[] counters = {networks.cache().hits(), networks.cache().misses()};
+    if (workers != null) {
+      for (int i = 0; i < workers.length; i++) {
+        counters[0] += workers[i].networks.cache().hits();
+        counters[1] += workers[i].networks.cache().misses();
+      }
+    }
+    return counters;
+  }
  
   /**
    * In MachinePlayer.java
@@ -64,27 +300,403 @@ public class MachinePlayer extends Player {
    */
   public Move chooseMove(){
     int color = this.myColor;
-    int alpha = (Integer.MAX_VALUE * -1);
-    int beta  = Integer.MAX_VALUE;
-    int depth    = 0;
     int maxDepth = this.searchDepth;
     
     BestMove myBestMove = null;
+    long start = System.nanoTime();
     
-    if (board.getMySteps() >= 5 && maxDepth != 1) {
-        myBestMove = miniMax(this.board, color, alpha, beta, depth, 1);
-        if (myBestMove.score == Integer.MAX_VALUE) {
-            forceMove(myBestMove.move);
-            return myBestMove.move;
-        }
+    //one working copy per call; miniMax makes and unmakes moves on it in place
+    Board searchBoard = null;
+    try {
+      searchBoard = (Board) this.board.clone();
+    } catch (CloneNotSupportedException cnsEx) {
     }
-  
-    myBestMove = miniMax(this.board, color, alpha, beta, depth, maxDepth);
+    
+    newSearch();
+    
+    //a forced network found by the threat search is played without a full-width search;
+    //with a time limit the threat search may use at most half of it
+    if (threats != null) {
+      long threatDeadline = timeLimit > 0 ? start + timeLimit * 500000L : 0;
+      int forced = threats.findForcedWin(searchBoard, color, threatDeadline);
+      if (forced != 0) {
+        myBestMove = new BestMove(Board.unpackMove(forced), Integer.MAX_VALUE);
+        forceMove(myBestMove.move);
+        return myBestMove.move;
+      }
+    }
+    
+    startHelpers(searchBoard, color);
+    
+    if (timeLimit > 0) {
+      myBestMove = iterativeDeepening(searchBoard, color, start + timeLimit * 1000000L);
+    } else {
+      if (board.getMySteps() >= 5 && maxDepth != 1) {
+          myBestMove = searchRoot(searchBoard, color, 1);
+          if (myBestMove.score != Integer.MAX_VALUE) {
+              myBestMove = null;
+          }
+      }
+      if (myBestMove == null) {
+          myBestMove = searchRoot(searchBoard, color, maxDepth);
+      }
+    }
+    
+    stopHelpers();
     forceMove(myBestMove.move);
     return myBestMove.move;
   }
   
+  /**
+   * In MachinePlayer.java
+   * Searches to depth 1, 2, 3, ... up to searchDepth until the stop time has passed.
+   * An unfinished search is abandoned and the result of the last finished one is returned.
+   * The first search always runs to completion so that there is a move to play.
+   *
+   * @param searchBoard: a copy of the game board to search on
+   * @param color: color to move
+   * @param stop: the System.nanoTime() value at which the time for this move runs out
+   * @return the best move of the deepest finished search
+   */
+  private BestMove iterativeDeepening(Board searchBoard, int color, long stop) {
+    deadline = 0;
+    BestMove best = null;
+    for (int maxDepth = 1; maxDepth <= Math.max(searchDepth, 1); maxDepth++) {
+      aborted = false;
+      BestMove result = searchRoot(searchBoard, color, maxDepth);
+      if (aborted) {
+        break;
+      }
+      best = result;
+      if (best.score == Integer.MAX_VALUE || best.score == -Integer.MAX_VALUE) {
+        break;
+      }
+      if (System.nanoTime() >= stop) {
+        break;
+      }
+      deadline = stop;
+    }
+    aborted = false;
+    deadline = 0;
+    return best;
+  }
+  
+  /**
+   * In MachinePlayer.java
+   * Searches the root position to maxDepth with a full window, on one thread or split across threads.
+   *
+   * @param searchBoard: a copy of the game board to search on
+   * @param color: color to move
+   * @param maxDepth: the maximum depth that minimax will go to
+   * @return the best move
+   */
+  private BestMove searchRoot(Board searchBoard, int color, int maxDepth) {
+    if (threads <= 1 || parallelMode == LAZY_SMP) {
+      int score = miniMax(searchBoard, color, -Integer.MAX_VALUE, Integer.MAX_VALUE, 0, maxDepth);
+      Move move = null;
+      if (bestMoves[0] != 0) {
+        move = Board.unpackMove(bestMoves[0]);
+      }
+      return new BestMove(move, score);
+    }
+    
+    if (findNetwork(searchBoard, color)) {
+      return new BestMove(null, Integer.MAX_VALUE);
+    }
+    DList moves = searchBoard.availableMoves(color);
+    Move[] rootMoves = new Move[moves.size()];
+    for (int i = 0; i < rootMoves.length; i++) {
+      rootMoves[i] = (Move) moves.get(i);
+    }
+    
+    //hand out the table's best move first
+    long key = searchBoard.getHashKey();
+    if (table != null) {
+      int hashMove = TranspositionTable.move(table.probe(key));
+      for (int i = 1; i < rootMoves.length; i++) {
+        if (Board.packMove(rootMoves[i]) == hashMove) {
+          Move m = rootMoves[i];
+          System.arraycopy(rootMoves, 0, rootMoves, 1, i);
+          rootMoves[0] = m;
+          break;
+        }
+      }
+    }
+    
+    createWorkers();
+    Board[] boards = new Board[threads];
+    for (int i = 0; i < threads; i++) {
+      try {
+        boards[i] = (Board) searchBoard.clone();
+      } catch (CloneNotSupportedException cnsEx) {
+      }
+      workers[i].table = table;
+      workers[i].deadline = this.deadline;
+      workers[i].aborted = false;
+    }
+    
+    RootSplit split = new RootSplit(rootMoves, color, maxDepth, workers, boards);
+    split.run(pool);
+    for (int i = 0; i < threads; i++) {
+      if (workers[i].aborted) {
+        aborted = true;
+      }
+    }
+    
+    BestMove best = split.result();
+    if (table != null && !aborted && best.move != null) {
+      table.store(key, maxDepth + 1, best.score, TranspositionTable.EXACT, Board.packMove(best.move));
+    }
+    return best;
+  }
+  
+  /**
+   * In MachinePlayer.java
+   * Creates the thread pool and one search context per thread, the first time they are needed.
+   */
+  private void createWorkers() {
+    if (pool == null) {
+      pool = new ForkJoinPool(threads);
+      workers = new MachinePlayer[threads];
+      for (int i = 0; i < threads; i++) {
+        workers[i] = new MachinePlayer(this, i);
+      }
+    }
+  }
+  
+  /**
+   * In MachinePlayer.java
+   * Shuts down the thread pool of a parallel search and drops the workers' search contexts.
+   * The player can still search afterwards; the pool is created again when it is next needed.
+   */
+  public void shutdown() {
+    if (pool != null) {
+      pool.shutdown();
+      pool = null;
+      workers = null;
+    }
+  }
+  
+  /**
+   * In MachinePlayer.java
+   * In LAZY_SMP mode, starts threads - 1 helpers that search copies of searchBoard until
+   * stopHelpers() is called.  Does nothing in other modes.
+   *
+   * @param searchBoard: the board the calling thread is about to search
+   * @param color: color to move
+   */
+  private void startHelpers(Board searchBoard, final int color) {
+    if (threads <= 1 || parallelMode != LAZY_SMP) {
+      return;
+    }
+    createWorkers();
+    stopHelpers = false;
+    helperTasks = new ForkJoinTask<?>[threads - 1];
+    for (int i = 1; i < threads; i++) {
+      final MachinePlayer helper = workers[i];
+      Board copy = null;
+      try {
+        copy = (Board) searchBoard.clone();
+      } catch (CloneNotSupportedException cnsEx) {
+      }
+      final Board helperBoard = copy;
+      helper.table = table;
+      helper.aborted = false;
+      helper.deadline = 0;
+      helperTasks[i - 1] = pool.submit(new RecursiveAction() {
+        protected void compute() {
+          helper.helperSearch(helperBoard, color);
+        }
+      });
+    }
+  }
+  
+  /**
+   * In MachinePlayer.java
+   * Stops the Lazy SMP helpers started by startHelpers() and waits for them to finish.
+   */
+  private void stopHelpers() {
+    if (helperTasks == null) {
+      return;
+    }
+    stopHelpers = true;
+    for (int i = 0; i < helperTasks.length; i++) {
+      helperTasks[i].join();
+    }
+    helperTasks = null;
+  }
+  
+  /**
+   * In MachinePlayer.java
+   * Iterative deepening loop of a Lazy SMP helper.  Odd-numbered helpers start one level
+   * deeper than the others, and every helper searches one level past searchDepth, so that
+   * the helpers fill the transposition table ahead of the calling thread.
+   *
+   * @param gboard: this helper's copy of the root board
+   * @param color: color to move
+   */
+  private void helperSearch(Board gboard, int color) {
+    for (int maxDepth = 1 + (helperId & 1); maxDepth <= Math.max(searchDepth, 1) + 1; maxDepth++) {
+      miniMax(gboard, color, -Integer.MAX_VALUE, Integer.MAX_VALUE, 0, maxDepth);
+      if (aborted) {
+        return;
+      }
+    }
+  }
+  
+  /**
+   * In MachinePlayer.java
+   * Worker loop of a root-split search: takes root moves from split until none are left
+   * and searches each one with the best score found so far by any worker as alpha.
+   *
+   * @param split: the shared state of the parallel search
+   * @param gboard: this worker's copy of the root board
+   */
+  protected void searchRootMoves(RootSplit split, Board gboard) {
+    for (int i = split.nextMove(); i < split.moves.length; i = split.nextMove()) {
+      if (aborted) {
+        return;
+      }
+      int alpha = split.alpha();
+      gboard.makeMove(split.moves[i], split.color);
+      int score = miniMax(gboard, 1 - split.color, alpha, Integer.MAX_VALUE, 1, split.maxDepth);
+      gboard.unmakeMove();
+      if (!aborted) {
+        split.report(i, score, alpha);
+      }
+    }
+  }
+  
+  /**
+   * In MachinePlayer.java
+   * Checks the clock every 256 nodes and sets aborted once the deadline has passed.
+   * Never aborts when there is no deadline.  A Lazy SMP helper also aborts when its owner stops it.
+   *
+   * @param none
+   * @return true if the current search must be abandoned
+   */
+  private boolean timeUp() {
+    if (owner != null && owner.stopHelpers) {
+      aborted = true;
+    }
+    if (!aborted && deadline != 0 && (++nodes & 255) == 0 && System.nanoTime() >= deadline) {
+      aborted = true;
+    }
+    return aborted;
+  }
+  
+  /**
+   * In MachinePlayer.java
+   * Starts a new transposition table generation for each chooseMove() call, so that
+   * entries left over from earlier moves are the first to be replaced.
+   */
+  private void newSearch() {
+    if (table != null) {
+      table.newGeneration();
+    }
+    for (int i = 0; i < MAXPLY; i++) {
+      killers[i][0] = 0;
+      killers[i][1] = 0;
+    }
+    ageHistory();
+  }
+  
+  /**
+   * In MachinePlayer.java
+   * Halves every history score, so that old cutoffs count less than recent ones.
+   */
+  private void ageHistory() {
+    for (int i = 0; i < history.length; i++) {
+      history[i] >>= 1;
+    }
+  }
+  
+  /**
+   * In MachinePlayer.java
+   * @param move: an ADD or STEP move, packed with Board.packMove
+   * @param color: the color making the move
+   * @return the move's index in history; an ADD move uses its target square as the from square
+   */
+  private static int historyIndex(int move, int color) {
+    int to = (move >>> 6) & 63;
+    int from = to;
+    if ((move >>> 12) == Move.STEP) {
+      from = move & 63;
+    }
+    return (color * 64 + from) * 64 + to;
+  }
+  
+  /**
+   * In MachinePlayer.java
+   * Sorts the moves of a node for alpha-beta: the transposition table's move first, then the
+   * killer moves of this depth, then the rest by history score.  Moves with equal scores keep
+   * the order of generateMoves(), except that Lazy SMP helpers rotate it first.
+   *
+   * @param moves: the packed moves from generateMoves()
+   * @param n: the number of moves
+   * @param ordered: the array to write the moves to, in the order to search them
+   * @param color: the color to move
+   * @param depth: the depth of the node
+   * @param hashMove: the packed move from the transposition table, or 0
+   */
+  private void orderMoves(int[] moves, int n, int[] ordered, int color, int depth, int hashMove) {
+    int[] scores = orderScores;
+    int rotation = 0;
+    if (owner != null && owner.parallelMode == LAZY_SMP && n > 0) {
+      rotation = (helperId + depth) % n;
+    }
+    for (int i = 0; i < n; i++) {
+      int m = moves[(i + rotation) % n];
+      int score;
+      if (m == hashMove) {
+        score = Integer.MAX_VALUE;
+      } else if (m == killers[depth][0]) {
+        score = KILLER1SCORE;
+      } else if (m == killers[depth][1]) {
+        score = KILLER2SCORE;
+      } else {
+        score = history[historyIndex(m, color)];
+      }
+      //insertion sort, highest score first, stable
+      int j = i;
+      while (j > 0 && scores[j - 1] < score) {
+        ordered[j] = ordered[j - 1];
+        scores[j] = scores[j - 1];
+        j--;
+      }
+      ordered[j] = m;
+      scores[j] = score;
+    }
+  }
+  
+  /**
+   * In MachinePlayer.java
+   * Records a move that caused a cutoff as a killer move of its depth and adds to its history score.
+   *
+   * @param move: the packed move
+   * @param color: the color that made the move
+   * @param depth: the depth of the node the move was made at
+   * @param draft: the number of plies searched below that node
+   */
+  private void recordCutoff(int move, int color, int depth, int draft) {
+    if (killers[depth][0] != move) {
+      killers[depth][1] = killers[depth][0];
+      killers[depth][0] = move;
+    }
+    int i = historyIndex(move, color);
+    history[i] += draft * draft;
+    if (history[i] > HISTORYLIMIT) {
+      ageHistory();
+    }
+  }
+  
   /** 
+   * Searches gboard in place: every child move is made and then unmade again,
+   * so gboard is back in its original state when miniMax returns.
+   * Positions are looked up in the transposition table before their moves are
+   * generated, and stored in it once they are searched.
+   * Moves are handled as packed ints in per-depth buffers; the best move found
+   * at this depth is left in bestMoves[depth].
    * 
    * @param gboard: board to perform minimax on
    * @param color: color to maximize chances of winning
@@ -92,122 +704,238 @@ public class MachinePlayer extends Player {
    * @param beta: lowest value in alpha-beta pruning
    * @param depth: the depth that minimax is currently at
    * @param maxDepth: the maximum depth that minimax will go to
-   * @return the best move
+   * @return the score of gboard
    */
-  private BestMove miniMax(Board gboard, int color, int alpha, int beta, int depth, int maxDepth) {
+  private int miniMax(Board gboard, int color, int alpha, int beta, int depth, int maxDepth) {
 
-    BestMove myBestMove = new BestMove();
-    BestMove replyMove = null;
+    bestMoves[depth] = 0;
+    
+    if (timeUp()) {
+      return 0;
+    }
     
     //only applicable if miniMax is called on a Board in which color already has a win
     if (depth == 0 && findNetwork(gboard, color)) {
       if (myColor == color) {
-        myBestMove.score = Integer.MAX_VALUE;
+        return Integer.MAX_VALUE;
       } else {
-        myBestMove.score = (Integer.MAX_VALUE * -1);
+        return (Integer.MAX_VALUE * -1);
       }
-      return myBestMove;
     }
     
     if (depth > 0 && findNetwork(gboard, 1-color)) {
       if (myColor == 1-color) {
-        myBestMove.score = Integer.MAX_VALUE;
+        return Integer.MAX_VALUE;
       } else {
-        myBestMove.score = (Integer.MAX_VALUE * -1);
+        return (Integer.MAX_VALUE * -1);
       }
-      return myBestMove;
     }
     
     if (depth > maxDepth) {
-      myBestMove.score = heuristicEvaluation(gboard, depth, color);
-      return myBestMove;
+      return evaluate(gboard, alpha, beta);
     }
     
+    long key = gboard.getHashKey();
+    int draft = maxDepth - depth + 1;
+    int hashMove = 0;
+    if (table != null) {
+      long entry = table.probe(key);
+      if (entry != 0) {
+        hashMove = TranspositionTable.move(entry);
+        if (depth > 0 && TranspositionTable.depth(entry) >= draft) {
+          int bound = TranspositionTable.bound(entry);
+          int score = TranspositionTable.score(entry);
+          if (bound == TranspositionTable.EXACT ||
+              (bound == TranspositionTable.LOWER && score >= beta) ||
+              (bound == TranspositionTable.UPPER && score <= alpha)) {
+            bestMoves[depth] = hashMove;
+            return score;
+          }
+        }
+      }
+    }
+    int alphaOrig = alpha;
+    int betaOrig = beta;
+    
+    int bestScore;
     if (color == gboard.myColor) {
-      myBestMove.score = alpha;
+      bestScore = alpha;
     } else {
-      myBestMove.score = beta;
+      bestScore = beta;
     }
     
-    DList moves = gboard.availableMoves(color);
-    myBestMove.move = (Move) moves.get(0);
+    if (moveLists[depth] == null) {
+      moveLists[depth] = new int[Board.MAXMOVES];
+      orderedLists[depth] = new int[Board.MAXMOVES];
+    }
+    int[] moves = moveLists[depth];
+    int[] ordered = orderedLists[depth];
+    int n = gboard.generateMoves(color, moves);
+    //the buffer is reused, so with no legal moves moves[0] is left over from another node
+    int bestMove = n > 0 ? moves[0] : 0;
+    orderMoves(moves, n, ordered, color, depth, hashMove);
     
-    for (int a = 0; a < moves.size(); a++) {
-      Move m = (Move) moves.get(a);
-      Board newBoard = null;
-      try {
-        newBoard = (Board) gboard.clone();
-      } catch (CloneNotSupportedException cnsEx) {
+    for (int a = 0; a < n; a++) {
+      int m = ordered[a];
+      gboard.makeMove(m, color);
+      int score = miniMax(gboard, 1-color, alpha, beta, depth+1, maxDepth);
+      gboard.unmakeMove();
+      if (aborted) {
+        bestMoves[depth] = bestMove;
+        return bestScore;
       }
-      newBoard.applyMove(m, color);
-      replyMove = miniMax(newBoard, 1-color, alpha, beta, depth+1, maxDepth);
-      newBoard = null;
       
-      if ((gboard.myColor == color) && (replyMove.score > myBestMove.score)) {
-        myBestMove.move = m;
-        myBestMove.score = replyMove.score;
-        alpha = replyMove.score;
-      } else if ((gboard.oppColor == color) && (replyMove.score < myBestMove.score)) {
-        myBestMove.move = m;
-        myBestMove.score = replyMove.score;
-        beta = replyMove.score;
+      if ((gboard.myColor == color) && (score > bestScore)) {
+        bestMove = m;
+        bestScore = score;
+        alpha = score;
+      } else if ((gboard.oppColor == color) && (score < bestScore)) {
+        bestMove = m;
+        bestScore = score;
+        beta = score;
       }
       if (alpha >= beta) {
-        return myBestMove;
+        recordCutoff(m, color, depth, draft);
+        break;
       }
     }
-    return myBestMove;
+    
+    if (table != null) {
+      int bound = TranspositionTable.EXACT;
+      if (bestScore <= alphaOrig) {
+        bound = TranspositionTable.UPPER;
+      } else if (bestScore >= betaOrig) {
+        bound = TranspositionTable.LOWER;
+      }
+      table.store(key, draft, bestScore, bound, bestMove);
+    }
+    bestMoves[depth] = bestMove;
+    return bestScore;
   }
   
-   /**
+  /**
    * In MachinePlayer.java
    * An evaluation function that assigns a score to a board.
-   ** The score is positive if the board favors the current player; negative if it favors the opponent
-   ** If either player has a winning board, they are assigned a maximum score of (-)1000
+   ** The score is positive if the board favors this player; negative if it favors the opponent
    *
-   * @param board: a board
-   * @param depth: what depth we're at in the minimax method
-   * @param color: what color the current player is
-   * @return an integer score of the board
+   * The full score is the sum of cheapEvaluation() and expensiveEvaluation().  It only depends on
+   * gboard, so it can be shared between searches through the transposition table.
+   * The cheap tier is tried first; the expensive tier is only added
+   * when the cheap score, widened by the most the expensive tier could add or take away, still
+   * overlaps the alpha-beta window.  Otherwise the end of that range that lies outside the window
+   * is returned, which is a bound on the true score just like any other fail-low or fail-high
+   * result.  Full scores are kept in the leaf score cache.
+   *
+   * @param gboard: a board
+   * @param alpha: highest value in alpha-beta pruning
+   * @param beta: lowest value in alpha-beta pruning
+   * @return an integer score of the board, from this player's point of view, or a bound outside the window
    */
-  private int heuristicEvaluation(Board gboard, int depth, int color) {
-    int myScore  = 0;
-    int oppScore = 0;
-    
-    int othercolor;
-    if (color == Board.BLACK) {
-      othercolor = Board.WHITE;
+  private int evaluate(Board gboard, int alpha, int beta) {
+    long key = gboard.getHashKey();
+    if (evalCache != null && evalCache.probe(key)) {
+      return evalCache.score(key);
     }
-    else {
-      othercolor = Board.BLACK;
+    int cheap = cheapEvaluation(gboard);
+    int upper = cheap + expensiveBound(gboard, myColor);
+    if (upper <= alpha) {
+      return upper;
     }
-      myScore = board.visibleCells(color) - board.visibleCells(othercolor);
-      if (board.inGoal(color, 0)) {
-        myScore += 4;
-      }
-      if (board.inGoal(color, 1)) {
-        myScore +=4;
-      }
-      if (board.inGoal(othercolor, 0)) {
-        myScore -= 2;
-      }
-      if (board.inGoal(othercolor,1)) {
-        myScore -= 2;
-      }
-      for (int i = 0; i < Board.GAMESIZE; i++) {
-        for (int j = 0; j < Board.GAMESIZE; j++) {
-          if (gboard.board[i][j] != null) {
-            if ((gboard.board[i][j]).getColor() == this.myColor) {
-              myScore  += (gboard.getEdgeList(gboard.board[i][j])).size();
-            } else {
-              oppScore += (gboard.getEdgeList(gboard.board[i][j])).size();
-            }
-          }
-        }
-      }
+    int lower = cheap - expensiveBound(gboard, oppColor);
+    if (lower >= beta) {
+      return lower;
+    }
+    int score = cheap + expensiveEvaluation(gboard);
+    if (evalCache != null) {
+      evalCache.store(key, score);
+    }
+    return score;
+  }
+  
+  /**
+   * In MachinePlayer.java
+   * The cheap tier of the evaluation: goal occupancy.
+   *
+   * @param gboard: a board
+   * @return the goal terms of the score, from this player's point of view
+   */
+  private int cheapEvaluation(Board gboard) {
+    int myScore = 0;
+    if (gboard.inGoal(myColor, 0)) {
+      myScore += 4;
+    }
+    if (gboard.inGoal(myColor, 1)) {
+      myScore +=4;
+    }
+    if (gboard.inGoal(oppColor, 0)) {
+      myScore -= 2;
+    }
+    if (gboard.inGoal(oppColor,1)) {
+      myScore -= 2;
+    }
+    return myScore;
+  }
+  
+  /**
+   * In MachinePlayer.java
+   * The expensive tier of the evaluation: pair visibility, edge counts and the distance of
+   * both colors to a network, which is the number of chips they still have to add to build one.
+   *
+   * @param gboard: a board
+   * @return the connectivity terms of the score, from this player's point of view
+   */
+  private int expensiveEvaluation(Board gboard) {
+    int myScore  = connectivityEvaluation(gboard);
+    int oppScore = 0;
+    myScore  -= DISTANCEWEIGHT * networkDistance(gboard, myColor);
+    oppScore -= DISTANCEWEIGHT * networkDistance(gboard, oppColor);
     return myScore - oppScore;
   }
   
+  /**
+   * In MachinePlayer.java
+   * The pair visibility and edge count terms of the evaluation.
+   *
+   * @param gboard: a board
+   * @return the visibility and edge terms of the score, from this player's point of view
+   */
+  protected int connectivityEvaluation(Board gboard) {
+    int myScore  = gboard.visibleCells(myColor) - gboard.visibleCells(oppColor);
+    int oppScore = 0;
+    //edge counts: every pair of visible chips gives an edge to both of its chips
+    myScore  += 2 * gboard.visibleCells(myColor);
+    oppScore += 2 * gboard.visibleCells(oppColor);
+    return myScore - oppScore;
+  }
+  
+  /**
+   * In MachinePlayer.java
+   * A network needs NETWORK_SIZE chips, so a color with fewer chips is at least that many chips away.
+   *
+   * @param gboard: a board
+   * @param color: the color to measure
+   * @return the estimated number of chips color has to add to complete a network, at most MAXDISTANCE + 1
+   */
+  private static int networkDistance(Board gboard, int color) {
+    int distance = NetworkDetector.distance(gboard, color, MAXDISTANCE);
+    return Math.max(distance, Board.NETWORK_SIZE - Long.bitCount(gboard.chips(color)));
+  }
+  
+  /**
+   * In MachinePlayer.java
+   * Bounds how much one color's chips can add to expensiveEvaluation(), using only the chip count:
+   * a chip sees at most one chip in each of the 8 directions, so n chips form at most 4n pairs,
+   * and the distance terms differ by at most MAXDISTANCE + 1.
+   *
+   * @param gboard: a board
+   * @param color: the color whose share is bounded
+   * @return the largest share of expensiveEvaluation() the color's chips can account for
+   */
+  private int expensiveBound(Board gboard, int color) {
+    int chips = Long.bitCount(gboard.chips(color));
+    return 3 * Math.min(4 * chips, chips * (chips - 1) / 2) + DISTANCEWEIGHT * (MAXDISTANCE + 1);
+  }
+  
   /**
    * In MachinePlayer.java
    * If the Move m is legal, records the move as a move by the opponent (updates the internal game board) and returns true.  If the move is illegal, 
@@ -220,22 +948,7 @@ public class MachinePlayer extends Player {
     if (m == null || m.moveKind == Move.QUIT) {
         return false;
     }
-    Move nm = null;
-    if (board.isValidMove(m, oppColor)) {
-      if (m.moveKind == Move.STEP && board.getOppSteps() >= Board.MAXSTEPS) {
-        board.remove(m.x2, m.y2);
-        board.setCell(new Cell(m.x1, m.y1, oppColor));
-        board.setOppSteps(board.getOppSteps() + 1);
-        return true;
-      } else if (m.moveKind == Move.ADD && board.getOppSteps() < Board.MAXSTEPS) {
-        board.setCell(new Cell(m.x1, m.y1, oppColor));
-        board.setOppSteps(board.getOppSteps() + 1);
-        return true;
-      } else {
-        return false;
-      }
-    }
-    return false;
+    return board.applyMove(m, oppColor);
   }
 
   /**
@@ -251,189 +964,7 @@ public class MachinePlayer extends Player {
     if (m == null || m.moveKind == Move.QUIT) {
         return false;
     }
-    if (board.isValidMove(m, myColor)) {
-      if (m.moveKind == Move.STEP && board.getMySteps() >= Board.MAXSTEPS) {
-        board.remove(m.x2, m.y2);
-        board.setCell(new Cell(m.x1, m.y1, myColor));
-        board.setMySteps(board.getMySteps() + 1);
-        return true;
-      } else if (m.moveKind == Move.ADD && board.getMySteps() < Board.MAXSTEPS) {
-        board.setCell(new Cell(m.x1, m.y1, myColor));
-        board.setMySteps(board.getMySteps() + 1);
-        return true;
-      } else {
-        return false;
-      }      
-    }
-    return false;
-  }
-  
-  /**
-   * In MachinePlayer.java
-   * Clears currentRoute, visited, stack, possibleNetwork instance variables
-   */ 
-  private void clearAll() {
-    currentRoute.makeEmpty();
-    visited = new int[78];
-    stack.clear();
-    possibleNetwork = new Cell[10];
-  }
-  
-  /** 
-  * In MachinePlayer.java
-  * Returns a list of all the cells comprising a newtork if there is one.
-  * Uses depth first search.
-  *
-  * @param startId: the ID of the cell in the starting goal area
-  * @param targetId: the ID of the cell in the ending goal area
-  * @param gboard: board to check
-  */
-  private Cell[] search(int startId, int targetId, Board gboard) {
-        clearAll();
-        DList nextEdges;
-        Edge next = null;
-        Cell start = gboard.getCell(startId);
-        Cell target = gboard.getCell(targetId);
-        if (start == null || target == null) {
-          return null;
-        }
-        Edge placeholder = new Edge(start, start);
-        stack.push(placeholder);
-        int loopCnt = 0;
-        
-        while (!stack.isEmpty()) {
-            int oldParent = 0;
-            if (next != null) {
-                oldParent = next.to.id();
-            }
-
-            next = stack.pop();
-            if (oldParent != 0) {
-                removeOld(next, oldParent);
-            }
-            
-            currentRoute.insert(next.to().id(), next.from().id());
-            visited[next.to().id()] = next.to().id();
-
-            loopCnt++;
-            //Target reached - found one network
-            while (next.to().id() == targetId) {
-                int index = 0;
-                Cell[] temp = new Cell[10];
-                temp[index] = target;
-                index++;
-                int parent = target.id();
-                do {
-                    parent = currentRoute.find(parent).value();
-                    temp[index] = gboard.getCell(parent);
-                    index++;
-                } while (parent != startId);
-                
-                int idx = 0;
-                for (int i = 9; i >= 0; i--) {
-                    if (temp[i] != null) {
-                        possibleNetwork[idx] = temp[i];
-                        idx++;
-                    }
-                }
-                
-                if (isValidRoute(possibleNetwork, start.getColor())) {
-                    return possibleNetwork;
-                } else {
-                    if (stack.isEmpty()) {
-                        return null;
-                    }
-                    parent = next.to().id();
-                    next = stack.pop();
-                    removeOld(next, parent);
-
-                    currentRoute.insert(next.to().id(), next.from().id());
-                    visited[next.to().id()] = next.to().id();
-                    possibleNetwork = new Cell[10];
-                }
-            }
-
-            nextEdges = gboard.getEdgeList(next.to().id());
-            for (int b = 0; b < nextEdges.size(); b++) {
-                Edge e = (Edge) nextEdges.get(b);
-                if (visited[e.to().id()] == 0) {
-                    stack.push(e);
-                }
-            }
-        }
-        return null;
-    }
-
-  /** 
-   * In MachinePlayer.java
-   * If search finds a possible network, but it is not a valid network (Ex. it's not more than 5 connections long), removeOld removes all the edges in the invalid 
-   * network that produced the invalid network up to a point so that search can continue to look for other options
-   *
-   * @param next: the next edge to be searched on the stack
-   * @param parent: the ID of the from-cell in the lowest edge current route
-   */
-  private void removeOld(Edge next, int parent) {
-        int toRemove = -1;
-        int oldSize = currentRoute.size();
-        boolean showDiff = false;
-        while (parent != next.from().id()) {
-            toRemove = parent;
-            parent = currentRoute.find(parent).value();
-            currentRoute.remove(toRemove);
-            visited[toRemove] = 0;
-        }
-        if (currentRoute.size() != oldSize) {
-            showDiff = true;
-        }
-    }
-    
-  /** 
-   * In MachinePlayer.java
-   * If search finds a possible network, isValidRoute determines if it is a valid network.
-   * Checks if this possible network is at least 6 cells long, if it turns a corner at every cell, and if it only has two chips in the goal areas.
-   *
-   * @param possibleNetwork: Cell array that contains connected cells that may possibly form a network
-   * @param color: color
-   */
-  private boolean isValidRoute(Cell[] possibleNetwork, int color) {
-    int csize = 0;
-    for (Cell c : possibleNetwork) {
-        if (c != null) {
-            csize++;
-        }
-    }
-    if (csize < 6) {
-        return false;
-    }
-    Cell c1, c2, c3 = null;
-    int x1, y1, x2, y2, x3, y3 = 0;
-    for (int i = 1; i < csize - 1; i++) {
-      c1 = possibleNetwork[i-1];
-      c2 = possibleNetwork[i];
-      c3 = possibleNetwork[i+1];
-      x1 = c1.x();
-      y1 = c1.y();
-      x2 = c2.x();
-      y2 = c2.y();
-      x3 = c3.x();
-      y3 = c3.y();
-      if (x1 == x2 && x2 == x3) {
-        return false;
-      }
-      if (y1 == y2 && y2 == y3) {
-        return false;
-      }
-      if ((x1 + y1) == (x2 + y2) && (x2 + y2) == (x3 + y3)) {
-        return false;
-      }
-      if ((x2 - x1) == (y2 - y1) && (x3 - x2) == (y3 - y2)) {
-        return false;
-      }
-      if (x2 == 0 || x2 == 7 || y2 == 0 || y2 == 7) {
-        return false;
-      }
-    }
-    return true;
+    return board.applyMove(m, myColor);
   }
   
   /**
@@ -445,34 +976,10 @@ public class MachinePlayer extends Player {
    * @return a boolean value indicate if a network was formed for the color chip
    */
   private boolean findNetwork(Board gboard, int color) {
-      if (gboard == null || (color != Board.WHITE && color != Board.BLACK)) {
+      if (gboard == null) {
           return false;
       }
-      if (color == gboard.myColor) {
-          if (gboard.getMySteps() < 6) {
-              return false;
-          }
-      } else {
-          if (gboard.getOppSteps() < 6) {
-              return false;
-          }
-      }
-      
-      DList starts  = gboard.getStartCells(color);
-      DList targets = gboard.getTargetCells(color);
-      
-      Cell[] result = null;
-      for (int i = 0; i < starts.size(); i++) {
-          Cell start = (Cell) starts.get(i);
-          for (int j = 0; j < targets.size(); j++) {
-              Cell target = (Cell) targets.get(j);
-              result = search(start.id(), target.id(), gboard);
-              if (result != null) {
-                return true;
-              }
-          }
-      }
-      return false;
+      return networks.hasNetwork(gboard, color);
   }
   
   public static void main (String[] args) {
@@ -488,8 +995,7 @@ public class MachinePlayer extends Player {
     mp2.forceMove(new Move(3, 5));
     mp2.forceMove(new Move(5, 7));
     System.out.println("board:\n" + mp2.board);
-    Cell[] r = mp2.search(60, 57, mp2.board);
-    if (r!=null) {System.out.println("Found network");}
+    if (mp2.networks.hasNetwork(mp2.board, Board.BLACK)) {System.out.println("Found network");}
     else {System.out.println("no network found");}
     }
 }
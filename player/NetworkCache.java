@@ -0,0 +1,97 @@
+/* NetworkCache.java */
+
+package player;
+
+/**
+ *  A fixed-size cache of network checks for NetworkDetector.
+ *
+ *  Whether a color has a network only depends on the position, so a result
+ *  stays valid for as long as the program runs.  Each slot is one long: the
+ *  position's hash key mixed with the color, with the lowest bit replaced by
+ *  the result.  The cache is direct-mapped and a new result always replaces
+ *  the old one in its slot.
+ *
+ *  Hits and misses are counted so the cache's use can be checked.
+ */
+public class NetworkCache {
+
+    protected static final int DEFAULTSIZE = 1 << 16;
+
+    // mixed into the keys of WHITE's checks, so the two colors use different slots
+    private static final long WHITE_KEY = 0x9E3779B97F4A7C15L;
+
+    private long[] entries;
+    private int mask;
+    private long hits;
+    private long misses;
+
+    /**
+     * Constructs a cache with at least the given number of slots
+     *
+     * @param size: the number of slots; rounded up to a power of two
+     */
+    public NetworkCache(int size) {
+        int slots = 1;
+        while (slots < size && slots < (1 << 30)) {
+            slots *= 2;
+        }
+        entries = new long[slots];
+        mask = slots - 1;
+    }
+
+    /**
+     * @param key: a position's hash key
+     * @param color: BLACK or WHITE
+     * @return the key of the check, with the lowest bit clear
+     */
+    private static long checkKey(long key, int color) {
+        if (color == Board.WHITE) {
+            key ^= WHITE_KEY;
+        }
+        return key & ~1L;
+    }
+
+    /**
+     * probe() looks up a network check
+     *
+     * @param key: the position's hash key
+     * @param color: BLACK or WHITE
+     * @return 1 if color has a network, 0 if it has none, -1 if the check is not in the cache
+     */
+    protected int probe(long key, int color) {
+        long k = checkKey(key, color);
+        long entry = entries[(int) (k >>> 1) & mask];
+        if (entry != 0 && (entry & ~1L) == k) {
+            hits++;
+            return (int) entry & 1;
+        }
+        misses++;
+        return -1;
+    }
+
+    /**
+     * store() records a network check
+     *
+     * @param key: the position's hash key
+     * @param color: BLACK or WHITE
+     * @param found: true if color has a network
+     */
+    protected void store(long key, int color, boolean found) {
+        long k = checkKey(key, color);
+        entries[(int) (k >>> 1) & mask] = k | (found ? 1 : 0);
+    }
+
+    /**
+     * @return the number of probes that found their check
+     */
+    public long hits() {
+        return hits;
+    }
+
+    /**
+     * @return the number of probes that did not find their check
+     */
+    public long misses() {
+        return misses;
+    }
+}
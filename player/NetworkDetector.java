@@ -0,0 +1,544 @@
+/* NetworkDetector.java */
+
+package player;
+
+/**
+ *  Finds networks on a Board without allocating.
+ *
+ *  A network is a path of chips of one color through the visibility graph kept
+ *  by Board.edges().  It starts in one of the color's goal areas, ends in the
+ *  other, has no other chip in a goal area, has at least NETWORK_SIZE chips and
+ *  turns at every chip: no three consecutive chips lie on one line.
+ *
+ *  The search is a depth first search over bit numbers.  The current path is
+ *  held in a fixed-size array and the chips on it in a 64-bit mask, and each
+ *  depth keeps the mask of neighbors it has not tried yet.  One detector
+ *  belongs to one search thread.
+ */
+public class NetworkDetector {
+
+    // a path never holds a chip twice, so it is never longer than the number of squares
+    private static final int MAXPATH = Board.GAMESIZE * Board.GAMESIZE;
+
+    private int[] path;
+    private int[] direction;
+    private long[] untried;
+    // union-find forest over bit numbers for the connectivity filter, and what each component holds
+    private int[] parent;
+    private int[] holds;
+    // results of earlier checks, by position
+    private NetworkCache cache;
+
+    /**
+     * Constructs a detector with its own path buffers
+     */
+    public NetworkDetector() {
+        path = new int[MAXPATH];
+        direction = new int[MAXPATH];
+        untried = new long[MAXPATH];
+        parent = new int[Board.GAMESIZE * Board.GAMESIZE];
+        holds = new int[Board.GAMESIZE * Board.GAMESIZE];
+        cache = new NetworkCache(NetworkCache.DEFAULTSIZE);
+    }
+
+    /**
+     * @return the cache of earlier results, for its hit and miss counters
+     */
+    protected NetworkCache cache() {
+        return cache;
+    }
+
+    /**
+     * @param color: BLACK or WHITE
+     * @return the goal area networks of color start from
+     */
+    protected static long startGoal(int color) {
+        return color == Board.BLACK ? BitBoard.TOP_GOAL : BitBoard.LEFT_GOAL;
+    }
+
+    /**
+     * @param color: BLACK or WHITE
+     * @return the goal area networks of color end in
+     */
+    protected static long targetGoal(int color) {
+        return color == Board.BLACK ? BitBoard.BOTTOM_GOAL : BitBoard.RIGHT_GOAL;
+    }
+
+    /**
+     * @param from: a bit number
+     * @param to: another bit number on a line through from
+     * @return a number for the direction from from to to; equal numbers mean the same direction
+     */
+    protected static int direction(int from, int to) {
+        return Integer.signum(BitBoard.x(to) - BitBoard.x(from)) * 3
+               + Integer.signum(BitBoard.y(to) - BitBoard.y(from));
+    }
+
+    /**
+     * hasNetwork() checks whether a color has a network on a board.
+     * Boards that fail a cheap necessary condition are rejected before the search:
+     * both goal areas must hold a chip with a visible partner outside the goal areas,
+     * there must be enough chips outside the goal areas for the middle of a network,
+     * and a start chip and a target chip must lie in one component of the visibility graph.
+     *
+     * The result is recorded on the board.  If the last check found no network, only
+     * components holding a chip that gained an edge since then are searched again,
+     * and the board is known to have no network when there is no such chip.
+     * Otherwise the position is looked up in the cache before it is searched.
+     *
+     * @param board: the board to check
+     * @param color: BLACK or WHITE
+     * @return true if color has at least one network
+     */
+    protected boolean hasNetwork(Board board, int color) {
+        if (color != Board.BLACK && color != Board.WHITE) {
+            return false;
+        }
+        long region = -1L;
+        if (board.knownNoNetwork(color)) {
+            region = board.networkDirty(color);
+            if (region == 0) {
+                return false;
+            }
+        }
+        long key = board.getHashKey();
+        int cached = cache.probe(key, color);
+        boolean found;
+        if (cached >= 0) {
+            found = cached == 1;
+        } else {
+            found = check(board, color, region);
+            cache.store(key, color, found);
+        }
+        board.recordNetwork(color, found);
+        return found;
+    }
+
+    /**
+     * Checks the components of the visibility graph that hold a chip of region
+     *
+     * @param board: the board to check
+     * @param color: BLACK or WHITE
+     * @param region: the chips whose components are searched; -1 for all of them
+     * @return true if one of those components holds a network
+     */
+    private boolean check(Board board, int color, long region) {
+        long own = board.chips(color);
+        long middle = own & ~BitBoard.ALL_GOALS;
+        if (Long.bitCount(middle) < Board.NETWORK_SIZE - 2) {
+            return false;
+        }
+        long start = linked(board, own & startGoal(color), middle);
+        if (start == 0) {
+            return false;
+        }
+        long target = linked(board, own & targetGoal(color), middle);
+        if (target == 0) {
+            return false;
+        }
+        long joined = joined(board, start, target, middle, region);
+        if (joined == 0) {
+            return false;
+        }
+        return search(board, start & joined, target & joined, (middle | target) & joined);
+    }
+
+    /**
+     * Finds the connected components that hold a start chip, a target chip and a chip of region,
+     * using union-find over the edges that have at least one end outside the goal areas.
+     * Turns and path length are ignored, so a network can only lie inside these components.
+     *
+     * @param board: the board to check
+     * @param start: the start-goal chips
+     * @param target: the target-goal chips
+     * @param middle: the chips outside the goal areas
+     * @param region: the chips a component must hold; -1 for any
+     * @return a mask of the chips in those components
+     */
+    private long joined(Board board, long start, long target, long middle, long region) {
+        long nodes = start | target | middle;
+        for (long n = nodes; n != 0; n &= n - 1) {
+            int sq = Long.numberOfTrailingZeros(n);
+            parent[sq] = sq;
+            holds[sq] = 0;
+        }
+        for (long m = middle; m != 0; m &= m - 1) {
+            int sq = Long.numberOfTrailingZeros(m);
+            for (long e = board.edges(sq) & nodes; e != 0; e &= e - 1) {
+                union(sq, Long.numberOfTrailingZeros(e));
+            }
+        }
+        //bit 0: a start chip, bit 1: a target chip, bit 2: a chip of region
+        for (long n = nodes; n != 0; n &= n - 1) {
+            int sq = Long.numberOfTrailingZeros(n);
+            long b = 1L << sq;
+            holds[find(sq)] |= ((start & b) != 0 ? 1 : 0) | ((target & b) != 0 ? 2 : 0)
+                               | ((region & b) != 0 ? 4 : 0);
+        }
+        long result = 0;
+        for (long n = nodes; n != 0; n &= n - 1) {
+            int sq = Long.numberOfTrailingZeros(n);
+            if (holds[find(sq)] == 7) {
+                result |= 1L << sq;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param sq: a bit number in the union-find forest
+     * @return the root of its component; the path to it is halved on the way
+     */
+    private int find(int sq) {
+        while (parent[sq] != sq) {
+            parent[sq] = parent[parent[sq]];
+            sq = parent[sq];
+        }
+        return sq;
+    }
+
+    /**
+     * Joins the components of two bit numbers
+     *
+     * @param a: a bit number in the union-find forest
+     * @param b: another bit number in the forest
+     */
+    private void union(int a, int b) {
+        int ra = find(a);
+        int rb = find(b);
+        if (ra != rb) {
+            parent[ra] = rb;
+        }
+    }
+
+    /**
+     * @param board: the board to check
+     * @param goal: chips in a goal area
+     * @param middle: the chips of the same color outside the goal areas
+     * @return the chips of goal that see at least one chip of middle
+     */
+    private static long linked(Board board, long goal, long middle) {
+        long result = 0;
+        for (long g = goal; g != 0; g &= g - 1) {
+            int sq = Long.numberOfTrailingZeros(g);
+            if ((board.edges(sq) & middle) != 0) {
+                result |= 1L << sq;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Searches every path from all start chips at once.  The path buffer is shared,
+     * and the sources are taken one at a time like the untried neighbors of a depth.
+     *
+     * @param board: the board to check
+     * @param sources: the chips in the start goal area a network may begin with
+     * @param target: the chips in the target goal area a network may end with
+     * @param allowed: the chips that may come after the first one
+     * @return true if one of the paths is a network
+     */
+    private boolean search(Board board, long sources, long target, long allowed) {
+        long onPath = 0;
+        int depth = -1;
+        while (true) {
+            if (depth < 0) {
+                if (sources == 0) {
+                    return false;
+                }
+                int first = Long.numberOfTrailingZeros(sources);
+                sources &= sources - 1;
+                depth = 0;
+                path[0] = first;
+                onPath = 1L << first;
+                untried[0] = board.edges(first) & allowed;
+                continue;
+            }
+            if (untried[depth] == 0) {
+                onPath &= ~(1L << path[depth]);
+                depth--;
+                continue;
+            }
+            int next = Long.numberOfTrailingZeros(untried[depth]);
+            untried[depth] &= untried[depth] - 1;
+            int dir = direction(path[depth], next);
+            //a network may not pass through a chip without turning
+            if (depth > 0 && dir == direction[depth]) {
+                continue;
+            }
+            //a chip in the target goal area ends the path
+            if ((target & (1L << next)) != 0) {
+                if (depth + 2 >= Board.NETWORK_SIZE) {
+                    return true;
+                }
+                continue;
+            }
+            depth++;
+            path[depth] = next;
+            direction[depth] = dir;
+            onPath |= 1L << next;
+            untried[depth] = board.edges(next) & allowed & ~onPath;
+        }
+    }
+
+    /**
+     * distance() estimates how many chips a color still has to add to complete a network.
+     * It is a 0-1 breadth first search over squares: a chip of color costs 0 and an empty square
+     * where color may add a chip costs 1.  Two squares are linked when one sees the other with
+     * nothing in between.  The search starts in the start goal area, ends in the target goal area
+     * and passes through no other goal square.  Turns, the minimum length and the lines cut by
+     * the added chips are ignored, so the estimate is optimistic.  Nothing is allocated.
+     *
+     * @param board: the board to measure
+     * @param color: BLACK or WHITE
+     * @param limit: the largest distance to search for
+     * @return the number of chips to add, or limit + 1 if more are needed
+     */
+    protected static int distance(Board board, int color, int limit) {
+        long own = board.chips(color);
+        long free = board.legalAdds(color);
+        long blockers = board.occupied | BitBoard.CORNERS;
+        long target = targetGoal(color);
+        long inside = ~BitBoard.ALL_GOALS | target;
+        long settled = 0;
+        long level = own & startGoal(color);
+        long next = free & startGoal(color);
+        for (int cost = 0; cost <= limit; cost++) {
+            //squares of this cost, and the chips that can be reached from them for free
+            long todo = level;
+            while (todo != 0) {
+                int sq = Long.numberOfTrailingZeros(todo);
+                todo &= todo - 1;
+                if ((target & (1L << sq)) != 0) {
+                    return cost;
+                }
+                long seen = BitBoard.visible(sq, blockers) & inside & ~settled & ~level;
+                long chips = seen & own;
+                level |= chips;
+                todo |= chips;
+                next |= seen & free;
+            }
+            settled |= level;
+            level = next & ~settled;
+            next = 0;
+            if (level == 0) {
+                break;
+            }
+        }
+        return limit + 1;
+    }
+
+    /**
+     * enumerate() hands every network of a color to a visitor, and if asked, every path that
+     * would be a network if one chip were added to it.  The added chip must be a legal add move
+     * on the board as it stands, and none of the path's other links may pass through its square.
+     * All paths share one buffer; nothing is allocated per path.
+     *
+     * @param board: the board to search
+     * @param color: BLACK or WHITE
+     * @param nearNetworks: true to also visit the paths that are missing one chip
+     * @param visitor: receives the paths, and can stop the enumeration
+     * @return the number of paths visited
+     */
+    protected int enumerate(Board board, int color, boolean nearNetworks, NetworkVisitor visitor) {
+        if (color != Board.BLACK && color != Board.WHITE) {
+            return 0;
+        }
+        long own = board.chips(color);
+        long blockers = board.occupied | BitBoard.CORNERS;
+        long empty = nearNetworks ? board.legalAdds(color) : 0;
+        long inStart = startGoal(color);
+        long inTarget = targetGoal(color);
+        long sources = (own | empty) & inStart;
+        int count = 0;
+        int missing = -1;
+        int missingDepth = -1;
+        long onPath = 0;
+        int depth = -1;
+        while (true) {
+            if (depth < 0) {
+                if (sources == 0) {
+                    return count;
+                }
+                int first = Long.numberOfTrailingZeros(sources);
+                sources &= sources - 1;
+                depth = 0;
+                path[0] = first;
+                onPath = 1L << first;
+                missing = (own & (1L << first)) != 0 ? -1 : first;
+                missingDepth = missing < 0 ? -1 : 0;
+                untried[0] = reachable(board, first, color, own, missing < 0 ? empty : 0, blockers) & ~inStart;
+                continue;
+            }
+            if (untried[depth] == 0) {
+                onPath &= ~(1L << path[depth]);
+                if (missingDepth == depth) {
+                    missing = -1;
+                    missingDepth = -1;
+                }
+                depth--;
+                continue;
+            }
+            int next = Long.numberOfTrailingZeros(untried[depth]);
+            untried[depth] &= untried[depth] - 1;
+            int dir = direction(path[depth], next);
+            if (depth > 0 && dir == direction[depth]) {
+                continue;
+            }
+            boolean isEmpty = (own & (1L << next)) == 0;
+            //a chip added on the path must not cut one of its links
+            if (missing >= 0 && (BitBoard.between(path[depth], next) & (1L << missing)) != 0) {
+                continue;
+            }
+            if (isEmpty && cutsPath(next, depth)) {
+                continue;
+            }
+            if ((inTarget & (1L << next)) != 0) {
+                if (depth + 2 >= Board.NETWORK_SIZE) {
+                    path[depth + 1] = next;
+                    count++;
+                    if (!visitor.visit(path, depth + 2, isEmpty ? next : missing)) {
+                        return count;
+                    }
+                }
+                continue;
+            }
+            depth++;
+            path[depth] = next;
+            direction[depth] = dir;
+            onPath |= 1L << next;
+            if (isEmpty) {
+                missing = next;
+                missingDepth = depth;
+            }
+            untried[depth] = reachable(board, next, color, own, missing < 0 ? empty : 0, blockers)
+                             & ~onPath & ~inStart;
+        }
+    }
+
+    /**
+     * @param board: the board to search
+     * @param sq: a square on the path
+     * @param color: the color of the path
+     * @param own: the chips of color
+     * @param empty: the empty squares the path may still use
+     * @param blockers: the squares that block the line of sight
+     * @return the chips of color linked to sq and the squares of empty that sq sees
+     */
+    private static long reachable(Board board, int sq, int color, long own, long empty, long blockers) {
+        long found = (own & (1L << sq)) != 0 ? board.edges(sq) : board.connections(sq, color);
+        if (empty == 0) {
+            return found;
+        }
+        return found | (BitBoard.visible(sq, blockers) & empty);
+    }
+
+    /**
+     * @param sq: an empty square about to be added to the path
+     * @param depth: the depth of the last square on the path
+     * @return true if a link between two squares of the path passes through sq
+     */
+    private boolean cutsPath(int sq, int depth) {
+        for (int i = 0; i < depth; i++) {
+            if ((BitBoard.between(path[i], path[i + 1]) & (1L << sq)) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Finds a network by trying every path of visible chips in turn.  Sight lines are
+     * found from the rays with Board.connections(), not from the board's kept edges.
+     *
+     * @param board: the board to check
+     * @param color: BLACK or WHITE
+     * @return true if color has at least one network
+     */
+    private static boolean slowNetwork(Board board, int color) {
+        long start = board.chips(color) & startGoal(color);
+        while (start != 0) {
+            int sq = Long.numberOfTrailingZeros(start);
+            if (slowExtend(board, color, sq, 1L << sq, 1, 0)) {
+                return true;
+            }
+            start &= start - 1;
+        }
+        return false;
+    }
+
+    /**
+     * @param board: the board to check
+     * @param color: the color of the path
+     * @param sq: the last chip of the path
+     * @param onPath: the chips on the path
+     * @param length: the number of chips on the path
+     * @param last: the direction of the last link, 0 for none
+     * @return true if the path can be extended to a network
+     */
+    private static boolean slowExtend(Board board, int color, int sq, long onPath, int length, int last) {
+        if ((targetGoal(color) & (1L << sq)) != 0) {
+            return length >= Board.NETWORK_SIZE;
+        }
+        long next = board.connections(sq, color) & ~onPath & ~startGoal(color);
+        while (next != 0) {
+            int to = Long.numberOfTrailingZeros(next);
+            int dir = direction(sq, to);
+            if (dir != last && slowExtend(board, color, to, onPath | (1L << to), length + 1, dir)) {
+                return true;
+            }
+            next &= next - 1;
+        }
+        return false;
+    }
+
+    /**
+     * Plays random games with moves made and unmade on one board, and checks hasNetwork()
+     * against slowNetwork() for both colors after every makeMove() and unmakeMove().
+     * Going back over positions that were already checked exercises the results that
+     * makeMove() records on the board and unmakeMove() restores.
+     */
+    public static void main(String[] args) {
+        java.util.Random random = new java.util.Random(17);
+        NetworkDetector detector = new NetworkDetector();
+        int[] moves = new int[Board.MAXMOVES];
+        int checked = 0;
+        int networks = 0;
+        int wrong = 0;
+        for (int game = 0; game < 300; game++) {
+            Board board = new Board(Board.WHITE);
+            int color = Board.WHITE;
+            int made = 0;
+            for (int ply = 0; ply < 80; ply++) {
+                if (made > 0 && random.nextInt(4) == 0) {
+                    int back = 1 + random.nextInt(Math.min(made, 3));
+                    for (int i = 0; i < back; i++) {
+                        board.unmakeMove();
+                        made--;
+                        color = 1 - color;
+                    }
+                } else {
+                    int n = board.generateMoves(color, moves);
+                    if (n == 0) {
+                        break;
+                    }
+                    board.makeMove(moves[random.nextInt(n)], color);
+                    made++;
+                    color = 1 - color;
+                }
+                for (int c = Board.BLACK; c <= Board.WHITE; c++) {
+                    boolean expected = slowNetwork(board, c);
+                    checked++;
+                    if (expected) {
+                        networks++;
+                    }
+                    if (detector.hasNetwork(board, c) != expected) {
+                        wrong++;
+                        System.out.println("mismatch for color " + c + ", expected " + expected + ":\n" + board);
+                    }
+                }
+            }
+        }
+        System.out.println(checked + " positions checked, " + networks + " with a network, " + wrong + " mismatches");
+    }
+}
@@ -0,0 +1,22 @@
+/* NetworkVisitor.java */
+
+package player;
+
+/**
+ *  Receives the networks found by NetworkDetector.enumerate(), one at a time.
+ *
+ *  The path array is the detector's own buffer and is overwritten by the next
+ *  call, so a visitor that keeps a network must copy it.
+ */
+public interface NetworkVisitor {
+
+    /**
+     * Called once for every network and, if asked for, every network that is missing one chip
+     *
+     * @param path: the bit numbers of the squares, from the start goal area to the target goal area
+     * @param length: the number of squares in path
+     * @param missing: the bit number of the empty square a chip must be added to, or -1 for a network
+     * @return true to go on, false to stop the enumeration
+     */
+    boolean visit(int[] path, int length, int missing);
+}
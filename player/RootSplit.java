@@ -0,0 +1,121 @@
+/* RootSplit.java */
+
+package player;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ *  The shared state of a root-split parallel search.
+ *
+ *  The root moves are handed out one at a time to the workers.  Every worker
+ *  searches its move with the best score found so far by any worker as alpha,
+ *  so cutoffs found by one thread are used by all of them.
+ */
+public class RootSplit {
+
+    protected Move[] moves;
+    protected int color;
+    protected int maxDepth;
+
+    private MachinePlayer[] workers;
+    private Board[] boards;
+    private AtomicInteger next;
+    private AtomicInteger alpha;
+
+    private Move bestMove;
+    private int bestScore;
+    private int bestIndex;
+
+    /**
+     * Constructs a root split over a list of moves
+     *
+     * @param moves: the root moves, in the order they should be handed out
+     * @param color: the color to move at the root
+     * @param maxDepth: the maximum depth passed to miniMax
+     * @param workers: one search context per thread
+     * @param boards: one copy of the root board per worker
+     */
+    protected RootSplit(Move[] moves, int color, int maxDepth, MachinePlayer[] workers, Board[] boards) {
+        this.moves = moves;
+        this.color = color;
+        this.maxDepth = maxDepth;
+        this.workers = workers;
+        this.boards = boards;
+        next = new AtomicInteger(0);
+        alpha = new AtomicInteger(-Integer.MAX_VALUE);
+        bestScore = -Integer.MAX_VALUE;
+        bestIndex = moves.length;
+    }
+
+    /**
+     * Runs one worker task per search context on pool and waits for all of them
+     *
+     * @param pool: the pool that runs the workers
+     */
+    protected void run(ForkJoinPool pool) {
+        ForkJoinTask<?>[] tasks = new ForkJoinTask<?>[workers.length];
+        for (int i = 0; i < workers.length; i++) {
+            final MachinePlayer worker = workers[i];
+            final Board board = boards[i];
+            tasks[i] = pool.submit(new RecursiveAction() {
+                protected void compute() {
+                    worker.searchRootMoves(RootSplit.this, board);
+                }
+            });
+        }
+        for (int i = 0; i < tasks.length; i++) {
+            tasks[i].join();
+        }
+    }
+
+    /**
+     * @return the index of the next root move to search, or moves.length when all are taken
+     */
+    protected int nextMove() {
+        return Math.min(next.getAndIncrement(), moves.length);
+    }
+
+    /**
+     * @return the best score found so far, to be used as alpha
+     */
+    protected int alpha() {
+        return alpha.get();
+    }
+
+    /**
+     * Records the score of a root move.  A score only counts when it beats the
+     * alpha the move was searched with; otherwise it is just an upper bound.
+     * Equal scores go to the move that comes first in the list.
+     *
+     * @param index: the move's index in moves
+     * @param score: the score returned by miniMax
+     * @param searchedAlpha: the alpha the move was searched with
+     */
+    protected synchronized void report(int index, int score, int searchedAlpha) {
+        if (score <= searchedAlpha) {
+            return;
+        }
+        if (score > bestScore || (score == bestScore && index < bestIndex)) {
+            bestScore = score;
+            bestIndex = index;
+            bestMove = moves[index];
+        }
+        int a = alpha.get();
+        while (score > a && !alpha.compareAndSet(a, score)) {
+            a = alpha.get();
+        }
+    }
+
+    /**
+     * @return the best root move and its score; the first move if every move loses
+     */
+    protected synchronized BestMove result() {
+        if (bestMove == null) {
+            return new BestMove(moves.length > 0 ? moves[0] : null, -Integer.MAX_VALUE);
+        }
+        return new BestMove(bestMove, bestScore);
+    }
+}
@@ -0,0 +1,126 @@
+/* SearchBenchmark.java */
+
+package player;
+
+import java.util.Random;
+
+import list.*;
+
+/**
+ *  Measures time-to-depth of MachinePlayer's parallel search.
+ *
+ *  A fixed set of positions is made by playing random legal moves from a fixed
+ *  seed.  Every position is searched to the same depth with 1, 2, 4, 8 and 16
+ *  threads, and the total time and the speedup over one thread are printed.
+ *  The threat search is turned off: it runs on one thread before the parallel
+ *  search and skips it whenever it finds a forced win.
+ *
+ *  Usage: java player.SearchBenchmark [depth] [positions] [lazy|root]
+ */
+public class SearchBenchmark {
+
+    private static final int[] THREADS = {1, 2, 4, 8, 16};
+
+    // network cache counters of the timed searches
+    private static long cacheHits;
+    private static long cacheMisses;
+    // leaf score cache counters of the timed searches
+    private static long evalHits;
+    private static long evalMisses;
+    private static long evalOverwrites;
+
+    /**
+     * Makes a position by playing random legal moves for both colors
+     *
+     * @param random: the source of the moves
+     * @param plies: the number of moves to play
+     * @return the recorded moves, in order
+     */
+    private static Move[] randomGame(Random random, int plies) {
+        Board board = new Board(Board.WHITE);
+        Move[] moves = new Move[plies];
+        int color = Board.WHITE;
+        for (int i = 0; i < plies; i++) {
+            DList legal = board.availableMoves(color);
+            moves[i] = (Move) legal.get(random.nextInt(legal.size()));
+            board.applyMove(moves[i], color);
+            color = 1 - color;
+        }
+        return moves;
+    }
+
+    /**
+     * Replays a game on a new MachinePlayer without a threat search and times one chooseMove() call
+     *
+     * @param game: the moves of the game, starting with WHITE's
+     * @param depth: the search depth
+     * @param threads: the number of search threads
+     * @param mode: MachinePlayer.LAZY_SMP or MachinePlayer.ROOT_SPLIT
+     * @return the time taken in nanoseconds
+     */
+    private static long timeSearch(Move[] game, int depth, int threads, int mode) {
+        int color = game.length % 2 == 0 ? Board.WHITE : Board.BLACK;
+        MachinePlayer player = new MachinePlayer(color, depth, 0, threads);
+        player.setParallelMode(mode);
+        player.setThreatSearch(0);
+        for (int i = 0; i < game.length; i++) {
+            if (i % 2 == 0 ? color == Board.WHITE : color == Board.BLACK) {
+                player.forceMove(game[i]);
+            } else {
+                player.opponentMove(game[i]);
+            }
+        }
+        long start = System.nanoTime();
+        player.chooseMove();
+        long time = System.nanoTime() - start;
+        long[] counters = player.networkCacheCounters();
+        cacheHits += counters[0];
+        cacheMisses += counters[1];
+        counters = player.evalCacheCounters();
+        evalHits += counters[0];
+        evalMisses += counters[1];
+        evalOverwrites += counters[2];
+        player.shutdown();
+        return time;
+    }
+
+    public static void main(String[] args) {
+        int depth = args.length > 0 ? Integer.parseInt(args[0]) : 3;
+        int positions = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        int mode = args.length > 2 && args[2].equals("root") ? MachinePlayer.ROOT_SPLIT : MachinePlayer.LAZY_SMP;
+
+        Random random = new Random(61);
+        Move[][] games = new Move[positions][];
+        for (int p = 0; p < positions; p++) {
+            games[p] = randomGame(random, 4 + 2 * p);
+        }
+
+        System.out.println("depth " + depth + ", " + positions + " positions, "
+                           + (mode == MachinePlayer.LAZY_SMP ? "lazy SMP" : "root split") + ", "
+                           + Runtime.getRuntime().availableProcessors() + " processors");
+        //one untimed pass so the JIT has compiled the search before anything is measured
+        for (int p = 0; p < positions; p++) {
+            timeSearch(games[p], depth, 1, mode);
+        }
+        cacheHits = 0;
+        cacheMisses = 0;
+        evalHits = 0;
+        evalMisses = 0;
+        evalOverwrites = 0;
+        long base = 0;
+        for (int t = 0; t < THREADS.length; t++) {
+            long total = 0;
+            for (int p = 0; p < positions; p++) {
+                total += timeSearch(games[p], depth, THREADS[t], mode);
+            }
+            if (t == 0) {
+                base = total;
+            }
+            System.out.println(THREADS[t] + " threads: " + (total / 1000000) + " ms, speedup "
+                               + ((double) base / total));
+        }
+        System.out.println("network cache: " + cacheHits + " hits, " + cacheMisses + " misses");
+        System.out.println("eval cache: " + evalHits + " hits, " + evalMisses + " misses, "
+                           + evalOverwrites + " overwrites");
+    }
+}
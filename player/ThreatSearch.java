@@ -0,0 +1,196 @@
+/* ThreatSearch.java */
+
+package player;
+
+/**
+ *  A narrow, deep search for forced networks, run by MachinePlayer before its
+ *  full-width search.
+ *
+ *  Only the attacker's threat moves are tried: moves after which the attacker
+ *  could complete a network with its next move.  Against each threat every
+ *  reply of the defender is tried.  Replies that do not block the threat lose
+ *  at once; the blocking replies are searched further.  A threat move wins if
+ *  every reply loses.  With maxThreats threats the search looks up to
+ *  2 * maxThreats + 1 plies ahead.
+ *
+ *  Winning add moves are found with NetworkDetector.enumerate(), whose
+ *  near-networks name exactly the squares that complete a network.  Winning
+ *  step moves are found by trying every step.  The search gives up after
+ *  nodeLimit network checks, or once the deadline passed to findForcedWin()
+ *  has passed.
+ */
+public class ThreatSearch implements NetworkVisitor {
+
+    protected static final int DEFAULTTHREATS = 3;
+    // without a deadline the node limit alone bounds the search, so it is kept to a few
+    // milliseconds, about the cost of a depth-2 full-width search; with a deadline it can be larger
+    protected static final int DEFAULTNODELIMIT = 10000;
+    protected static final int TIMEDNODELIMIT = 200000;
+
+    private int maxThreats;
+    private int nodeLimit;
+    private int checks;
+    private long deadline;
+
+    private NetworkDetector networks;
+    // per level: the attacker's moves and the defender's replies
+    private int[][] moves;
+    private int[][] replies;
+    // for findWin(), which does not recurse
+    private int[] winMoves;
+    private int winSquare;
+
+    /**
+     * Constructs a threat search with its own network detector and move buffers
+     *
+     * @param maxThreats: the largest number of threats in a row to search
+     * @param nodeLimit: the number of network checks after which the search gives up
+     */
+    protected ThreatSearch(int maxThreats, int nodeLimit) {
+        this.maxThreats = maxThreats;
+        this.nodeLimit = nodeLimit;
+        networks = new NetworkDetector();
+        moves = new int[maxThreats + 1][Board.MAXMOVES];
+        replies = new int[maxThreats + 1][Board.MAXMOVES];
+        winMoves = new int[Board.MAXMOVES];
+    }
+
+    /**
+     * findForcedWin() looks for a sequence of threats that wins however the opponent replies,
+     * trying shorter sequences first
+     *
+     * @param board: the board to search; moves are made and unmade on it in place
+     * @param color: the attacker, who is to move
+     * @param deadline: the System.nanoTime() value at which to give up; 0 for no deadline
+     * @return the packed first move of a forced win, or 0 if none was found
+     */
+    protected int findForcedWin(Board board, int color, long deadline) {
+        checks = 0;
+        this.deadline = deadline;
+        for (int threats = 0; threats <= maxThreats && !givenUp(); threats++) {
+            int move = prove(board, color, threats, 0);
+            if (move != 0) {
+                return move;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Looks for a threat move of color that wins against every reply
+     *
+     * @param board: the board, color to move
+     * @param color: the attacker
+     * @param threatsLeft: the number of threats still allowed
+     * @param level: the index of the move buffers to use
+     * @return the packed winning move, or 0 if none was found
+     */
+    private int prove(Board board, int color, int threatsLeft, int level) {
+        int win = findWin(board, color);
+        if (win != 0) {
+            return win;
+        }
+        if (threatsLeft == 0) {
+            return 0;
+        }
+        int[] list = moves[level];
+        int n = board.generateMoves(color, list);
+        for (int i = 0; i < n && !givenUp(); i++) {
+            board.makeMove(list[i], color);
+            checks++;
+            boolean wins = !networks.hasNetwork(board, 1 - color)
+                           && findWin(board, color) != 0
+                           && repliesLose(board, color, threatsLeft, level);
+            board.unmakeMove();
+            if (wins) {
+                return list[i];
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Checks that every reply of the defender to a threat loses
+     *
+     * @param board: the board after the threat, the defender to move
+     * @param color: the attacker
+     * @param threatsLeft: the number of threats allowed, the one just made included
+     * @param level: the index of the move buffers to use
+     * @return true if the attacker wins after every reply
+     */
+    private boolean repliesLose(Board board, int color, int threatsLeft, int level) {
+        int[] list = replies[level];
+        int n = board.generateMoves(1 - color, list);
+        if (n == 0) {
+            return false;
+        }
+        for (int i = 0; i < n; i++) {
+            if (givenUp()) {
+                return false;
+            }
+            board.makeMove(list[i], 1 - color);
+            checks++;
+            boolean loses = !networks.hasNetwork(board, 1 - color)
+                            && (findWin(board, color) != 0
+                                || prove(board, color, threatsLeft - 1, level + 1) != 0);
+            board.unmakeMove();
+            if (!loses) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return true once the search has used up its network checks or its time
+     */
+    private boolean givenUp() {
+        return checks >= nodeLimit || (deadline != 0 && System.nanoTime() >= deadline);
+    }
+
+    /**
+     * Finds a move that completes a network for color at once
+     *
+     * @param board: the board, color to move
+     * @param color: the color to move
+     * @return the packed winning move, or 0 if there is none
+     */
+    private int findWin(Board board, int color) {
+        checks++;
+        if (board.getSteps(color) < Board.MAXSTEPS) {
+            winSquare = -1;
+            networks.enumerate(board, color, true, this);
+            if (winSquare < 0) {
+                return 0;
+            }
+            return (Move.ADD << 12) | (winSquare << 6);
+        }
+        int n = board.generateMoves(color, winMoves);
+        for (int i = 0; i < n; i++) {
+            board.makeMove(winMoves[i], color);
+            checks++;
+            boolean found = networks.hasNetwork(board, color);
+            board.unmakeMove();
+            if (found) {
+                return winMoves[i];
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Stops the enumeration at the first path that is missing one chip
+     *
+     * @param path: the squares of the path
+     * @param length: the number of squares in path
+     * @param missing: the empty square of the path, or -1
+     * @return false once a missing square has been found
+     */
+    public boolean visit(int[] path, int length, int missing) {
+        if (missing >= 0) {
+            winSquare = missing;
+            return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,157 @@
+/* TranspositionTable.java */
+
+package player;
+
+/**
+ *  A fixed-size transposition table for MachinePlayer's game tree search.
+ *
+ *  Each slot is one checked key and one packed data word in two parallel long arrays:
+ *
+ *    bits  0-13  best move (see Board.packMove), 0 if none
+ *    bits 14-15  bound type (EXACT, LOWER or UPPER), 0 for an empty slot
+ *    bits 16-23  search depth (number of plies searched below the position)
+ *    bits 24-31  generation of the search that stored the entry
+ *    bits 32-63  score
+ *
+ *  A slot is overwritten when the new entry was searched at least as deep, or
+ *  when the old entry comes from an earlier generation.
+ *
+ *  The table is shared by all search threads without locks.  The key array holds
+ *  key ^ data rather than the key, so a slot whose two words were written by
+ *  different threads at the same time no longer matches either key and simply
+ *  reads as empty.
+ */
+public class TranspositionTable {
+
+    protected static final int EXACT = 1;
+    protected static final int LOWER = 2;
+    protected static final int UPPER = 3;
+
+    private static final int BYTES_PER_ENTRY = 16;
+
+    private long[] keys;
+    private long[] data;
+    private int mask;
+    private int generation;
+
+    /**
+     * Constructs a table using at most the given amount of memory
+     *
+     * @param megabytes: the memory budget; at least one entry is always allocated
+     */
+    public TranspositionTable(int megabytes) {
+        long entries = ((long) megabytes << 20) / BYTES_PER_ENTRY;
+        int size = 1;
+        while (size * 2L <= entries && size < (1 << 30)) {
+            size *= 2;
+        }
+        keys = new long[size];
+        data = new long[size];
+        mask = size - 1;
+    }
+
+    /**
+     * newGeneration() starts a new search.  Entries from earlier generations are
+     * still used, but are replaced first.
+     */
+    protected void newGeneration() {
+        generation = (generation + 1) & 0xFF;
+    }
+
+    /**
+     * probe() looks up a position
+     *
+     * @param key: the position's hash key
+     * @return the packed data word of the position, or 0 if it is not in the table
+     */
+    protected long probe(long key) {
+        int i = (int) key & mask;
+        long entry = data[i];
+        if ((keys[i] ^ entry) == key) {
+            return entry;
+        }
+        return 0;
+    }
+
+    /**
+     * store() records the result of searching a position
+     *
+     * @param key: the position's hash key
+     * @param depth: the number of plies searched below the position
+     * @param score: the score found
+     * @param bound: EXACT, LOWER or UPPER
+     * @param move: the best move found, packed with Board.packMove, or 0
+     */
+    protected void store(long key, int depth, int score, int bound, int move) {
+        int i = (int) key & mask;
+        long old = data[i];
+        boolean sameKey = (keys[i] ^ old) == key;
+        if (old != 0 && !sameKey && generation(old) == generation && depth(old) > depth) {
+            return;
+        }
+        if (move == 0 && sameKey) {
+            move = move(old);
+        }
+        long entry = ((long) score << 32) | ((long) generation << 24) | ((long) depth << 16)
+                     | ((long) bound << 14) | move;
+        data[i] = entry;
+        keys[i] = key ^ entry;
+    }
+
+    /**
+     * clear() empties the table
+     */
+    protected void clear() {
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = 0;
+            data[i] = 0;
+        }
+    }
+
+    /**
+     * @return the number of slots in the table
+     */
+    protected int capacity() {
+        return keys.length;
+    }
+
+    /**
+     * @param entry: a data word returned by probe()
+     * @return the packed best move of the entry
+     */
+    protected static int move(long entry) {
+        return (int) entry & 0x3FFF;
+    }
+
+    /**
+     * @param entry: a data word returned by probe()
+     * @return EXACT, LOWER or UPPER
+     */
+    protected static int bound(long entry) {
+        return (int) (entry >>> 14) & 0x3;
+    }
+
+    /**
+     * @param entry: a data word returned by probe()
+     * @return the search depth of the entry
+     */
+    protected static int depth(long entry) {
+        return (int) (entry >>> 16) & 0xFF;
+    }
+
+    /**
+     * @param entry: a data word returned by probe()
+     * @return the generation that stored the entry
+     */
+    protected static int generation(long entry) {
+        return (int) (entry >>> 24) & 0xFF;
+    }
+
+    /**
+     * @param entry: a data word returned by probe()
+     * @return the score of the entry
+     */
+    protected static int score(long entry) {
+        return (int) (entry >>> 32);
+    }
+}